@@ -0,0 +1,118 @@
+package network;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * Measures how many full cycles per second a size x size grid gets through,
+ * from 1x1 up to 64x64, in both engines. Every row passes a counter from
+ * left to right, so port handoffs happen on every cycle. In the lockstep
+ * benchmark every operation is one LockstepEngine.step. The threaded
+ * benchmark lets a SiloNetwork run with an unthrottled clock and counts
+ * the clock ticks while the benchmark thread sleeps, reported as the
+ * secondary result threaded:cycles. It runs once with interpreted programs
+ * and once with programs compiled by the ProgramCompiler from the start.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CycleBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class LockstepState {
+        @Param({"1", "4", "16", "64"})
+        private int size;
+        private LockstepEngine engine;
+
+        @Setup
+        public void setUp() {
+            engine = new LockstepEngine(size, size, programs(size));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ThreadedState {
+        @Param({"1", "4", "16", "64"})
+        private int size;
+        @Param({"interpreted", "compiled"})
+        private String backend;
+        private SiloNetwork network;
+        private EngineClock clock;
+
+        @Setup
+        public void setUp() {
+            network = new SiloNetwork(size, size, new ArrayList<>(), new ArrayList<>());
+            if (backend.equals("compiled")) {
+                network.setProgramCompiler(new ProgramCompiler(0));
+            }
+            List<String> programs = programs(size);
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    network.createSilo(row, col).setCode(programs.get(row * size + col));
+                }
+            }
+            clock = network.getClock();
+            clock.setUnthrottled();
+            network.startSilos();
+        }
+
+        @TearDown
+        public void tearDown() {
+            network.stopThreads();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Cycles {
+        public long cycles;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cycles = 0;
+        }
+    }
+
+    @Benchmark
+    public long lockstep(LockstepState state) {
+        state.engine.step();
+        return state.engine.getCycle();
+    }
+
+    @Benchmark
+    public void threaded(ThreadedState state, Cycles cycles) throws InterruptedException {
+        // Sleep rather than spin, so the silo threads get the CPU even on a single core
+        long start = state.clock.getTickCount();
+        Thread.sleep(10);
+        cycles.cycles += state.clock.getTickCount() - start;
+    }
+
+    /**
+     * Returns the programs of a grid row by row. The first column counts,
+     * the middle columns pass the count on and the last column takes it.
+     */
+    static List<String> programs(int size) {
+        List<String> programs = new ArrayList<>();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (size == 1) {
+                    programs.add("ADD 1\nNEGATE");
+                } else if (col == 0) {
+                    programs.add("ADD 1\nMOVE ACC RIGHT");
+                } else if (col == size - 1) {
+                    programs.add("MOVE LEFT ACC");
+                } else {
+                    programs.add("MOVE LEFT RIGHT");
+                }
+            }
+        }
+        return programs;
+    }
+}
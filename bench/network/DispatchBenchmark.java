@@ -0,0 +1,66 @@
+package network;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * Measures how long it takes to dispatch and execute one compiled
+ * instruction, for every instruction with register and literal operands:
+ * in Interpreter.executeLocal, which a threaded silo runs ahead with, and
+ * in SiloStepper.stepSilo, which the lockstep and tiled engines step every
+ * silo with. Port operands are covered by PortTransferBenchmark. The
+ * program repeats the instruction, so the jumps jump back to its start.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+    private static final int LENGTH = 8;
+
+    @Param({"NOOP", "MOVE 7 ACC", "MOVE ACC BAK", "SWAP", "SAVE", "ADD 3", "ADD BAK", "SUB 3", "NEGATE", "JUMP 0",
+            "JEZ 0", "JNZ 0", "JGZ 0", "JLZ 0", "JRO 1"})
+    private String instruction;
+
+    private Program program;
+    private final int[] registers = new int[3];
+    private SiloStepper stepper;
+    private long cycle;
+
+    @Setup
+    public void setUp() {
+        String code = (instruction + "\n").repeat(LENGTH);
+        program = Program.compile(code);
+        registers[0] = 1;
+        registers[1] = 2;
+        SiloArrays silos = new SiloArrays(1, 1, List.of(code));
+        silos.acc[0] = 1;
+        silos.bak[0] = 2;
+        stepper = new SiloStepper(silos);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public int interpreter() {
+        int index = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            index = Interpreter.executeLocal(program, index, registers);
+        }
+        return index + registers[0];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public int stepper() {
+        for (int i = 0; i < LENGTH; i++) {
+            stepper.stepSilo(0, cycle++);
+        }
+        return stepper.silos.acc[0];
+    }
+}
@@ -0,0 +1,336 @@
+package network;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The EngineEquivalence tool runs random networks in every engine and
+ * checks that they agree. It is built with the benchmarks:
+ *
+ *   java -cp target/benchmarks.jar network.EngineEquivalence [networks] [seed]
+ *
+ * Every network is a small grid of random programs with an input stream
+ * above the top left silo and an output stream below the bottom right one.
+ * It is run in the plain LockstepEngine, which all the others are compared
+ * with:
+ *
+ * - with fast forward: same cycles, deadlock, outputs and registers
+ * - in the TiledEngine, with several tile sizes and numbers of workers:
+ *   same cycles, deadlock, outputs and registers
+ * - optimized in CYCLE_ACCURATE mode: same cycles, deadlock and outputs,
+ *   since instruction indexes refer to the rewritten programs
+ * - optimized in FAST mode: the outputs of the one that wrote fewer values
+ *   are the start of those of the other, and they are the same if both
+ *   ran into a deadlock
+ * - in a threaded SiloNetwork that compiles every program right away:
+ *   the same deadlock and outputs if the lockstep run ended in a
+ *   deadlock, and otherwise the same first outputs, as many as the
+ *   lockstep run wrote, since a threaded network cannot be stopped after
+ *   a given cycle. Networks that neither deadlock nor write any output
+ *   are left out here, there is nothing to compare them on
+ *
+ * Every mismatch is printed with the programs of its network, and the exit
+ * code is 1 if there was any.
+ */
+public final class EngineEquivalence {
+    private static final int DEFAULT_NETWORKS = 200;
+    private static final long CYCLES = 20_000;
+    // How long a threaded network may take to get as far as the lockstep engine did
+    private static final long THREADED_TIMEOUT_MS = 10_000;
+    private static final int[][] TILES = {{1, 1, 1}, {1, 2, 2}, {2, 2, 3}, {0, 0, 4}};
+    private static final String[] JUMPS = {"JEZ", "JNZ", "JGZ", "JLZ"};
+
+    private final List<String> mismatches = new ArrayList<>();
+    private int deadlocked;
+    private int threaded;
+
+    private EngineEquivalence() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int networks = DEFAULT_NETWORKS;
+        long seed = 1;
+        try {
+            if (args.length > 2) {
+                throw new IllegalArgumentException("Too many arguments");
+            }
+            if (args.length > 0) {
+                networks = Integer.parseInt(args[0]);
+            }
+            if (args.length > 1) {
+                seed = Long.parseLong(args[1]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Usage: EngineEquivalence [networks] [seed]");
+            System.exit(1);
+        }
+
+        EngineEquivalence check = new EngineEquivalence();
+        Random random = new Random(seed);
+        for (int i = 0; i < networks; i++) {
+            check.check(new RandomNetwork(random));
+        }
+        for (String mismatch : check.mismatches) {
+            System.out.println(mismatch);
+        }
+        System.out.printf("Checked %d networks, %d ran into a deadlock, %d also ran on threads, %d mismatches%n",
+                networks, check.deadlocked, check.threaded, check.mismatches.size());
+        System.exit(check.mismatches.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Runs a network in every engine and records where one of them does not
+     * agree with the plain lockstep run.
+     */
+    private void check(RandomNetwork network) throws InterruptedException {
+        LockstepEngine plain = network.lockstep(ProgramOptimizer.NONE, false);
+        String expected = describe(network, plain);
+
+        compare(network, "fast forward", expected, describe(network, network.lockstep(ProgramOptimizer.NONE, true)));
+        for (int[] tiles : TILES) {
+            compare(network, "tiled " + Arrays.toString(tiles), expected, describe(network, network.tiled(tiles)));
+        }
+
+        LockstepEngine accurate = network.lockstep(ProgramOptimizer.CYCLE_ACCURATE, false);
+        compare(network, "optimized accurate", outcome(plain), outcome(accurate));
+
+        LockstepEngine fast = network.lockstep(ProgramOptimizer.FAST, false);
+        int[] plainOutputs = plain.getOutputValues(0);
+        int[] fastOutputs = fast.getOutputValues(0);
+        int common = Math.min(plainOutputs.length, fastOutputs.length);
+        boolean finished = plain.getDeadlock() != null && fast.getDeadlock() != null;
+        if (!Arrays.equals(plainOutputs, 0, common, fastOutputs, 0, common)
+                || finished && plainOutputs.length != fastOutputs.length) {
+            mismatch(network, "optimized fast", Arrays.toString(plainOutputs), Arrays.toString(fastOutputs));
+        }
+
+        Deadlock deadlock = plain.getDeadlock();
+        if (deadlock != null) {
+            deadlocked++;
+        }
+        if (deadlock != null || plainOutputs.length > 0) {
+            threaded++;
+            String expectedThreaded = Arrays.toString(plainOutputs);
+            if (deadlock != null) {
+                expectedThreaded = deadlock + " " + expectedThreaded;
+            }
+            compare(network, "threaded compiled", expectedThreaded, network.threaded(deadlock != null,
+                    plainOutputs.length));
+        }
+    }
+
+    private void compare(RandomNetwork network, String engine, String expected, String actual) {
+        if (!expected.equals(actual)) {
+            mismatch(network, engine, expected, actual);
+        }
+    }
+
+    private void mismatch(RandomNetwork network, String engine, String expected, String actual) {
+        mismatches.add(engine + " differs from lockstep\n  expected " + expected + "\n  actual   " + actual + "\n"
+                + network);
+    }
+
+    /**
+     * Returns the cycle, deadlock and output values a run ended with.
+     */
+    private static String outcome(LockstepEngine engine) {
+        return "cycle " + engine.getCycle() + ", " + engine.getDeadlock() + ", output "
+                + Arrays.toString(engine.getOutputValues(0));
+    }
+
+    /**
+     * Returns the outcome of a run along with the registers of every silo.
+     */
+    private static String describe(RandomNetwork network, LockstepEngine engine) {
+        StringBuilder text = new StringBuilder(outcome(engine)).append(", registers");
+        for (int s = 0; s < network.rows * network.cols; s++) {
+            int row = s / network.cols;
+            int col = s % network.cols;
+            text.append(' ').append(engine.getAcc(row, col)).append('/').append(engine.getBak(row, col))
+                    .append('/').append(engine.getInstructionIndex(row, col));
+        }
+        return text.toString();
+    }
+
+    private static String describe(RandomNetwork network, TiledEngine engine) {
+        StringBuilder text = new StringBuilder("cycle " + engine.getCycle() + ", " + engine.getDeadlock()
+                + ", output " + Arrays.toString(engine.getOutputValues(0))).append(", registers");
+        for (int s = 0; s < network.rows * network.cols; s++) {
+            int row = s / network.cols;
+            int col = s % network.cols;
+            text.append(' ').append(engine.getAcc(row, col)).append('/').append(engine.getBak(row, col))
+                    .append('/').append(engine.getInstructionIndex(row, col));
+        }
+        return text.toString();
+    }
+
+    /**
+     * A RandomNetwork is a grid of up to 3 x 3 silos running short random
+     * programs that only use the ports between silos, the input stream and
+     * the output stream, together with the input values and the sizes of
+     * the runs the engines are given. Its jumps and JRO offsets make most
+     * of them loop, some for good and some until a value runs out.
+     */
+    private static final class RandomNetwork {
+        private final int rows;
+        private final int cols;
+        private final List<String> programs = new ArrayList<>();
+        private final int[] input;
+        private final long[] runs;
+
+        RandomNetwork(Random random) {
+            rows = 1 + random.nextInt(3);
+            cols = 1 + random.nextInt(3);
+            for (int s = 0; s < rows * cols; s++) {
+                programs.add(program(random, s / cols, s % cols));
+            }
+            input = new int[random.nextInt(20)];
+            for (int i = 0; i < input.length; i++) {
+                input[i] = random.nextInt(7) - 2;
+            }
+            // Several runs, so fast forward and the tiled workers also stop and start again
+            runs = new long[1 + random.nextInt(3)];
+            long left = CYCLES;
+            for (int i = 0; i < runs.length - 1; i++) {
+                runs[i] = 1 + random.nextInt((int) left / 2);
+                left -= runs[i];
+            }
+            runs[runs.length - 1] = left;
+        }
+
+        private String program(Random random, int row, int col) {
+            List<String> ports = new ArrayList<>();
+            if (row > 0) {
+                ports.add("UP");
+            }
+            if (row < rows - 1) {
+                ports.add("DOWN");
+            }
+            if (col > 0) {
+                ports.add("LEFT");
+            }
+            if (col < cols - 1) {
+                ports.add("RIGHT");
+            }
+            boolean reads = row == 0 && col == 0;
+            boolean writes = row == rows - 1 && col == cols - 1;
+            StringBuilder program = new StringBuilder();
+            int length = 1 + random.nextInt(7);
+            for (int i = 0; i < length; i++) {
+                // The streams are UP of the first silo and DOWN of the last one, but never between silos
+                List<String> readPorts = new ArrayList<>(ports);
+                List<String> writePorts = new ArrayList<>(ports);
+                if (reads && !readPorts.contains("UP")) {
+                    readPorts.add("UP");
+                }
+                if (writes && !writePorts.contains("DOWN")) {
+                    writePorts.add("DOWN");
+                }
+                String read = readPorts.isEmpty() ? "ACC" : readPorts.get(random.nextInt(readPorts.size()));
+                String write = writePorts.isEmpty() ? "ACC" : writePorts.get(random.nextInt(writePorts.size()));
+                program.append(":L").append(i).append(":\n");
+                switch (random.nextInt(16)) {
+                    case 0 -> program.append("ADD ").append(random.nextInt(7) - 3);
+                    case 1, 13 -> program.append("MOVE ACC ").append(write);
+                    case 2, 14 -> program.append("MOVE ").append(read).append(" ACC");
+                    case 3, 4 -> program.append(JUMPS[random.nextInt(JUMPS.length)]).append(" L")
+                            .append(random.nextInt(length));
+                    case 5 -> program.append("SUB ").append(random.nextBoolean() ? read : random.nextInt(5));
+                    case 6 -> program.append("NEGATE");
+                    case 7 -> program.append("SWAP");
+                    case 8 -> program.append("SAVE");
+                    case 9 -> program.append("JRO ").append(random.nextInt(3) - 1);
+                    case 10 -> program.append("MOVE ").append(random.nextInt(2000) - 1000).append(" ACC");
+                    case 11 -> program.append("ADD ").append(random.nextInt(200_000) - 100_000);
+                    case 15 -> program.append("ADD ").append(read);
+                    default -> program.append("JUMP L").append(random.nextInt(length));
+                }
+                program.append('\n');
+            }
+            return program.toString();
+        }
+
+        LockstepEngine lockstep(int optimization, boolean fastForward) {
+            LockstepEngine engine = new LockstepEngine(rows, cols, programs);
+            engine.addInputStream(-1, 0, input);
+            engine.addOutputStream(rows, cols - 1);
+            if (optimization != ProgramOptimizer.NONE) {
+                engine.optimize(optimization);
+            }
+            engine.setFastForward(fastForward);
+            for (long cycles : runs) {
+                engine.run(cycles);
+            }
+            return engine;
+        }
+
+        TiledEngine tiled(int[] tiles) {
+            TiledEngine engine = new TiledEngine(rows, cols, programs, tiles[0], tiles[1], tiles[2]);
+            engine.addInputStream(-1, 0, input);
+            engine.addOutputStream(rows, cols - 1);
+            for (long cycles : runs) {
+                engine.run(cycles);
+            }
+            return engine;
+        }
+
+        /**
+         * Runs the network on threads, with every program compiled before
+         * its first instruction. If it deadlocks, it runs until it does
+         * and the deadlock and the output values are returned. Otherwise
+         * it runs until it has written the given number of values, and
+         * those are returned.
+         */
+        String threaded(boolean deadlocks, int outputs) throws InterruptedException {
+            Stream in = new Stream(-1, 0, true);
+            for (int value : input) {
+                in.addValue(value);
+            }
+            Stream out = new Stream(rows, cols - 1, false);
+            SiloNetwork network = new SiloNetwork(rows, cols, List.of(in), List.of(out));
+            network.setProgramCompiler(new ProgramCompiler(0));
+            network.getClock().setUnthrottled();
+            for (int s = 0; s < rows * cols; s++) {
+                network.createSilo(s / cols, s % cols).setCode(programs.get(s));
+            }
+            network.startSilos();
+            network.startInputStreams();
+            long end = System.currentTimeMillis() + THREADED_TIMEOUT_MS;
+            while (network.getDeadlock() == null && (deadlocks || out.size() < outputs)
+                    && System.currentTimeMillis() < end) {
+                Thread.sleep(1);
+            }
+            Deadlock deadlock = network.getDeadlock();
+            // The silos may still be writing, but the first values stay as they are
+            int[] values = new int[Math.min(out.size(), deadlocks ? Integer.MAX_VALUE : outputs)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = out.getValue(i);
+            }
+            try {
+                // Releases the silos from their ports and the barrier, so their threads can end
+                network.reset();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            network.stopThreads();
+            return deadlocks ? deadlock + " " + Arrays.toString(values) : Arrays.toString(values);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("  " + rows + " x " + cols + " grid, input "
+                    + Arrays.toString(input) + ", runs " + Arrays.toString(runs));
+            for (int s = 0; s < programs.size(); s++) {
+                text.append("\n  silo ").append(s / cols).append(',').append(s % cols).append(": ")
+                        .append(programs.get(s).replace('\n', ' ').trim());
+            }
+            return text.toString();
+        }
+    }
+}
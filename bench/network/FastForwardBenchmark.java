@@ -0,0 +1,71 @@
+package network;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * Measures LockstepEngine cycles per second with fast forward off and on,
+ * on a 16x16 grid in which the first silo of every row counts down from
+ * a large number before it passes a value along the row to an output
+ * stream. Most cycles are spent in the countdown loops, which fast forward
+ * skips, while the values passed on keep checking that the skips land on
+ * the right cycle.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastForwardBenchmark {
+    private static final int SIZE = 16;
+    private static final int CYCLES = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class EngineState {
+        @Param({"off", "on"})
+        private String fastForward;
+        private LockstepEngine engine;
+
+        @Setup
+        public void setUp() {
+            engine = new LockstepEngine(SIZE, SIZE, programs());
+            for (int row = 0; row < SIZE; row++) {
+                engine.addOutputStream(row, SIZE);
+            }
+            engine.setFastForward(fastForward.equals("on"));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public long lockstep(EngineState state) {
+        LockstepEngine engine = state.engine;
+        engine.run(CYCLES);
+        return engine.getOutputCount(0);
+    }
+
+    /**
+     * Returns the programs row by row. The countdowns of the rows differ in
+     * length, so each skip only reaches the next countdown that runs out,
+     * rather than the end of all of them.
+     */
+    static List<String> programs() {
+        List<String> programs = new ArrayList<>();
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (col == 0) {
+                    programs.add("MOVE " + (20_000 + row * 1_000) + " ACC\n:L:\nSUB 1\nJGZ L\nADD " + row
+                            + "\nMOVE ACC RIGHT");
+                } else {
+                    programs.add("MOVE LEFT ACC\nADD 1\nMOVE ACC RIGHT");
+                }
+            }
+        }
+        return programs;
+    }
+}
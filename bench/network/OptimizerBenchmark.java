@@ -0,0 +1,82 @@
+package network;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * Measures LockstepEngine cycles per second on a 32x32 grid whose programs
+ * are full of patterns the ProgramOptimizer rewrites, with the programs as
+ * written and optimized in both modes. In accurate mode the cycles do the
+ * same work with less dispatch. In fast mode each cycle gets further, so
+ * the values that reach the output streams are counted as the secondary
+ * result outputs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimizerBenchmark {
+    private static final int SIZE = 32;
+
+    @State(Scope.Benchmark)
+    public static class EngineState {
+        @Param({"none", "fast", "accurate"})
+        private String mode;
+        private LockstepEngine engine;
+
+        @Setup
+        public void setUp() {
+            engine = new LockstepEngine(SIZE, SIZE, programs());
+            for (int row = 0; row < SIZE; row++) {
+                engine.addOutputStream(row, SIZE);
+            }
+            engine.optimize(ProgramOptimizer.modeFromName(mode));
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Outputs {
+        public long outputs;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            outputs = 0;
+        }
+    }
+
+    @Benchmark
+    public void lockstep(EngineState state, Outputs outputs) {
+        LockstepEngine engine = state.engine;
+        long before = engine.getOutputCount(0);
+        engine.step();
+        outputs.outputs += engine.getOutputCount(0) - before;
+    }
+
+    /**
+     * Returns the programs row by row. The first column counts, the middle
+     * columns pass the count on through a few instructions that cancel out
+     * and the last column writes it to the output stream.
+     */
+    static List<String> programs() {
+        List<String> programs = new ArrayList<>();
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (col == 0) {
+                    programs.add("ADD 1\nSAVE\nSWAP\nMOVE ACC RIGHT\nJUMP END\n:END:");
+                } else if (col == SIZE - 1) {
+                    programs.add("MOVE LEFT ACC\nADD 0\nMOVE ACC RIGHT");
+                } else {
+                    programs.add("MOVE LEFT ACC\nADD 1\nNEGATE\nNEGATE\nSUB 1\nMOVE ACC RIGHT");
+                }
+            }
+        }
+        return programs;
+    }
+}
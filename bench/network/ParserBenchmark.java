@@ -0,0 +1,87 @@
+package network;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * Measures compiling a single large program into a Program with
+ * Parser.compile, and loading a whole input file with parseInputFile. The
+ * input file has a 64x64 grid where every silo has a short program, and an
+ * input stream of inline values.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    private static final int GRID_SIZE = 64;
+
+    @Param({"1000", "100000"})
+    private int instructions;
+
+    private final Parser parser = new Parser();
+    private String program;
+    private Path inputFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        program = program(instructions);
+
+        StringBuilder file = new StringBuilder();
+        file.append(GRID_SIZE).append(' ').append(GRID_SIZE).append('\n');
+        for (int silo = 0; silo < GRID_SIZE * GRID_SIZE; silo++) {
+            file.append(program(8)).append("END\n");
+        }
+        file.append("INPUT\n-1 0\n");
+        for (int i = 0; i < instructions; i++) {
+            file.append(i).append('\n');
+        }
+        file.append("END\nOUTPUT\n").append(GRID_SIZE).append(" 0\nEND\n");
+        inputFile = Files.createTempFile("parser-benchmark", ".txt");
+        Files.writeString(inputFile, file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(inputFile);
+    }
+
+    /**
+     * Builds a program of the given length that uses every kind of
+     * operand, with a label every eight instructions.
+     */
+    private static String program(int length) {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            switch (i % 8) {
+                case 0 -> code.append(":L").append(i).append(":\nMOVE UP ACC\n");
+                case 1 -> code.append("ADD 1\n");
+                case 2 -> code.append("SAVE\n");
+                case 3 -> code.append("SUB BAK\n");
+                case 4 -> code.append("JGZ L").append(i - 4).append('\n');
+                case 5 -> code.append("SWAP\n");
+                case 6 -> code.append("NEGATE\n");
+                default -> code.append("MOVE ACC DOWN\n");
+            }
+        }
+        return code.toString();
+    }
+
+    @Benchmark
+    public Program compile() {
+        return parser.compile(program);
+    }
+
+    @Benchmark
+    public Parser.InputFileData parseInputFile() throws IOException {
+        return parser.parseInputFile(inputFile.toString());
+    }
+}
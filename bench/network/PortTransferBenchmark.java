@@ -0,0 +1,103 @@
+package network;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * Measures the latency of handing a value from one silo to its neighbour.
+ * Each operation is a round trip: the benchmark thread sends a value from
+ * silo 0,0 to silo 0,1 with SiloNetwork.sendValue, an echo thread receives
+ * it with receiveValue and sends it back incremented. The synchronousQueue
+ * benchmark does the same through a pair of SynchronousQueue<Integer>, the
+ * way Grid used to hand values over, as a baseline. Run with -prof gc to
+ * compare the allocation per transfer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PortTransferBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class NetworkState {
+        private SiloNetwork network;
+        private Thread echo;
+        private volatile boolean stopped;
+
+        @Setup
+        public void setUp() {
+            network = new SiloNetwork(1, 2, new ArrayList<>(), new ArrayList<>());
+            echo = new Thread(() -> {
+                try {
+                    while (!stopped) {
+                        int value = network.receiveValue(0, 1, Port.LEFT);
+                        if (!stopped) {
+                            network.sendValue(0, 1, Port.LEFT, value + 1);
+                        }
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }, "echo");
+            echo.setDaemon(true);
+            echo.start();
+        }
+
+        @TearDown
+        public void tearDown() {
+            stopped = true;
+            echo.interrupt();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class QueueState {
+        private final SynchronousQueue<Integer> ping = new SynchronousQueue<>();
+        private final SynchronousQueue<Integer> pong = new SynchronousQueue<>();
+        private Thread echo;
+
+        @Setup
+        public void setUp() {
+            echo = new Thread(() -> {
+                try {
+                    while (true) {
+                        pong.put(ping.take() + 1);
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }, "echo");
+            echo.setDaemon(true);
+            echo.start();
+        }
+
+        @TearDown
+        public void tearDown() {
+            echo.interrupt();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Counter {
+        // Large enough to stay out of the Integer cache
+        private int value = 1_000_000;
+    }
+
+    @Benchmark
+    public int siloNetwork(NetworkState state, Counter counter) throws InterruptedException {
+        state.network.sendValue(0, 0, Port.RIGHT, counter.value);
+        counter.value = state.network.receiveValue(0, 0, Port.RIGHT);
+        return counter.value;
+    }
+
+    @Benchmark
+    public int synchronousQueue(QueueState state, Counter counter) throws InterruptedException {
+        state.ping.put(counter.value);
+        counter.value = state.pong.take();
+        return counter.value;
+    }
+}
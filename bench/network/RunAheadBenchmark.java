@@ -0,0 +1,99 @@
+package network;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * Measures how many cycles per second a compute heavy size x size grid gets
+ * through in a SiloNetwork, with silos running ahead over their port free
+ * instructions and without. Every silo counts down a loop of a given number
+ * of iterations between two port operations, passing a value from left to
+ * right along its row. The network runs with an unthrottled clock, and the
+ * clock ticks are counted while the benchmark thread sleeps, reported as the
+ * secondary result cycles.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RunAheadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Network {
+        @Param({"2", "8"})
+        private int size;
+        @Param({"10", "100"})
+        private int loop;
+        @Param({"on", "off"})
+        private String runAhead;
+        private SiloNetwork network;
+        private EngineClock clock;
+
+        @Setup
+        public void setUp() {
+            network = new SiloNetwork(size, size, new ArrayList<>(), new ArrayList<>());
+            network.setRunAhead(runAhead.equals("on"));
+            List<String> programs = programs(size, loop);
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    network.createSilo(row, col).setCode(programs.get(row * size + col));
+                }
+            }
+            clock = network.getClock();
+            clock.setUnthrottled();
+            network.startSilos();
+        }
+
+        @TearDown
+        public void tearDown() {
+            network.stopThreads();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Cycles {
+        public long cycles;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cycles = 0;
+        }
+    }
+
+    @Benchmark
+    public void threaded(Network state, Cycles cycles) throws InterruptedException {
+        // Sleep rather than spin, so the silo threads get the CPU even on a single core
+        long start = state.clock.getTickCount();
+        Thread.sleep(10);
+        cycles.cycles += state.clock.getTickCount() - start;
+    }
+
+    /**
+     * Returns the programs of a grid row by row. Every silo counts down
+     * from loop before it passes a value on, the first column makes the
+     * value up and the last column drops it.
+     */
+    static List<String> programs(int size, int loop) {
+        String countDown = "MOVE " + loop + " ACC\n:L:\nSUB 1\nJGZ L\n";
+        List<String> programs = new ArrayList<>();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (col == 0) {
+                    programs.add(countDown + "MOVE " + row + " RIGHT");
+                } else if (col == size - 1) {
+                    programs.add("MOVE LEFT NIL\n" + countDown);
+                } else {
+                    programs.add("MOVE LEFT BAK\n" + countDown + "MOVE BAK RIGHT");
+                }
+            }
+        }
+        return programs;
+    }
+}
@@ -0,0 +1,68 @@
+package network;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * Compares running a large grid on platform threads against running it on
+ * virtual threads. For each mode it measures how long it takes to create
+ * every silo and its interpreter thread, how many cycles the network gets
+ * through in a fixed amount of time with an unthrottled clock, and how many
+ * OS threads the JVM uses.
+ *
+ * Usage: ThreadModeBenchmark [size] [seconds]
+ * The grid is size x size silos. Every row passes a counter from left to
+ * right so the port handoffs and the barrier are both exercised.
+ */
+public class ThreadModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            if (!mode.isSupported()) {
+                System.out.println(mode + ": not supported on this JVM, skipped");
+                continue;
+            }
+            run(mode, size, seconds);
+        }
+        System.exit(0);
+    }
+
+    private static void run(ExecutionMode mode, int size, int seconds) throws InterruptedException {
+        // Threads left behind by an earlier run are not counted
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long startTime = System.nanoTime();
+        SiloNetwork network = new SiloNetwork(size, size, new ArrayList<>(), new ArrayList<>(), mode);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                SiloState silo = network.createSilo(row, col);
+                silo.setCode(program(col, size));
+            }
+        }
+        long createNanos = System.nanoTime() - startTime;
+
+        network.getClock().setUnthrottled();
+        network.startSilos();
+        int startPhase = network.getPhaser().getPhase();
+        Thread.sleep(seconds * 1000L);
+        int cycles = network.getPhaser().getPhase() - startPhase;
+        int osThreads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+        network.stopThreads();
+
+        System.out.printf("%s: %dx%d grid, created in %.1f ms, %d cycles in %d s (%.2f cycles/s), %d new OS threads%n",
+                mode, size, size, createNanos / 1e6, cycles, seconds, cycles / (double) seconds, osThreads);
+    }
+
+    private static String program(int col, int size) {
+        if (col == 0) {
+            return "ADD 1\nMOVE ACC RIGHT";
+        } else if (col == size - 1) {
+            return "MOVE LEFT ACC";
+        }
+        return "MOVE LEFT RIGHT";
+    }
+}
@@ -0,0 +1,64 @@
+package network;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * Measures cycles per second of large grids in the TiledEngine with 1 up
+ * to 8 workers, next to the LockstepEngine on the same grid. The grids run
+ * the counter rows of CycleBenchmark, so every tile boundary between two
+ * columns carries a transfer on most cycles. Every invocation runs 16
+ * cycles, which keeps the cost of starting the workers out of the result.
+ * Scaling only shows with as many free cores as workers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TiledEngineBenchmark {
+    private static final int CYCLES = 16;
+
+    @State(Scope.Benchmark)
+    public static class TiledState {
+        @Param({"256", "1024"})
+        private int size;
+        @Param({"1", "2", "4", "8"})
+        private int workers;
+        private TiledEngine engine;
+
+        @Setup
+        public void setUp() {
+            engine = new TiledEngine(size, size, CycleBenchmark.programs(size), 0, 0, workers);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LockstepState {
+        @Param({"256", "1024"})
+        private int size;
+        private LockstepEngine engine;
+
+        @Setup
+        public void setUp() {
+            engine = new LockstepEngine(size, size, CycleBenchmark.programs(size));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public long tiled(TiledState state) {
+        state.engine.run(CYCLES);
+        return state.engine.getCycle();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public long lockstep(LockstepState state) {
+        state.engine.run(CYCLES);
+        return state.engine.getCycle();
+    }
+}
@@ -1,22 +1,37 @@
 package gui;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.HPos;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
 import javafx.scene.layout.*;
 import javafx.scene.text.Font;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import network.Checkpoint;
+import network.Deadlock;
+import network.EngineClock;
+import network.ExecutionMode;
 import network.Parser;
+import network.ProgramCompiler;
 import network.SiloNetwork;
 import network.SiloState;
 import network.Stream;
+import network.TraceReplayer;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -42,9 +57,17 @@ public class AssemblySilosGUI extends Application {
     private int COLS;
     private boolean isPaused = false;
     private File inputFile;
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+    private Path replayPath;
+    private Path resumePath;
+    private ProgramCompiler programCompiler;
+    private TraceReplayer replayer;
+    private Deadlock shownDeadlock;
     private Parser.InputFileData fileData;
-    private HBox root;
-    private HBox buttonBox;
+    private SiloGraphic[][] siloGraphics;
+    private final NetworkRenderer renderer = new NetworkRenderer();
+    private String speed = SPEEDS[0];
+    private static final String[] SPEEDS = {"1 HZ", "2 HZ", "5 HZ", "10 HZ", "100 HZ", "1000 HZ", "TURBO"};
 
     /**
      * main launches the javaFX
@@ -62,7 +85,7 @@ public class AssemblySilosGUI extends Application {
     @Override
     public void start(Stage primaryStage) {
         Parameters params = getParameters();
-        List<String> args = params.getRaw();
+        List<String> args = params.getUnnamed();
 
         if (args.isEmpty()) {
             Platform.exit();
@@ -72,9 +95,30 @@ public class AssemblySilosGUI extends Application {
         String inputFilePath = args.get(0);
         inputFile = new File(inputFilePath);
 
+        // --threads=virtual runs every silo on a virtual thread
+        String threads = params.getNamed().get("threads");
+        if (threads != null) {
+            executionMode = ExecutionMode.fromName(threads);
+        }
+        // --replay=[trace] plays back a trace recorded with TraceTool instead of running the silos
+        String replay = params.getNamed().get("replay");
+        if (replay != null) {
+            replayPath = Paths.get(replay);
+        }
+        // --compile=[instructions] compiles a silo's program to bytecode once it has executed that many instructions
+        String compile = params.getNamed().get("compile");
+        if (compile != null) {
+            programCompiler = new ProgramCompiler(Long.parseLong(compile));
+        }
+        // --resume=[checkpoint] continues from a checkpoint saved with the Save button
+        String resume = params.getNamed().get("resume");
+        if (resume != null) {
+            resumePath = Paths.get(resume);
+        }
+
         parseInputFile();
 
-        root = new HBox();
+        HBox root = new HBox();
         root.setStyle("-fx-background-color: black;");
         GridPane gridPane = createGridPane();
 
@@ -87,15 +131,27 @@ public class AssemblySilosGUI extends Application {
         Button stopButton = new Button("Stop");
         styleButton(stopButton);
 
+        Button saveButton = new Button("Save");
+        styleButton(saveButton);
+
+        ComboBox<String> speedBox = createSpeedBox();
+        Label clockLabel = createClockLabel();
+
         configureStartButton(startButton, pauseButton);
         configurePauseButton(pauseButton);
         configureStopButton(stopButton);
+        configureSaveButton(saveButton);
+        watchForDeadlock(pauseButton);
 
-        buttonBox = createButtonBox(startButton, pauseButton, stopButton);
+        HBox buttonBox = createButtonBox(startButton, pauseButton, stopButton, saveButton, speedBox, clockLabel);
         HBox streamsBox = populateStreams(gridPane);
         VBox sideDisplay = createSideDisplay(streamsBox,buttonBox);
 
         populateGridPaneWithSilos(gridPane);
+        if (resumePath != null) {
+            resumeCheckpoint();
+        }
+        renderer.start();
 
         root.getChildren().addAll(sideDisplay, gridPane);
 
@@ -114,7 +170,9 @@ public class AssemblySilosGUI extends Application {
         primaryStage.show();
 
         primaryStage.setOnCloseRequest(event -> {
+            network.unregisterMBean();
             network.stopThreads();
+            network.stopStreams();
             Platform.exit();
             System.exit(0);
         });
@@ -123,7 +181,11 @@ public class AssemblySilosGUI extends Application {
     /**
      * The parseInputFile method reads input data from a file, creates a new
      * SiloNetwork instance, and sets the number of rows and columns based
-     * on the input file.
+     * on the input file. Streams that are not next to the grid stop the
+     * program with an error, silo programs using ports with nothing
+     * connected to them are reported as a warning so they can be edited.
+     * The metrics of the network are published over JMX, in place of
+     * those of a network loaded before.
      */
 
     private void parseInputFile() {
@@ -136,12 +198,59 @@ public class AssemblySilosGUI extends Application {
             }
             ROWS = fileData.getNumRows();
             COLS = fileData.getNumCols();
-            network = new SiloNetwork(ROWS, COLS, fileData.getInputStreams(), fileData.getOutputStreams());
+            if (network != null) {
+                network.unregisterMBean();
+            }
+            try {
+                network = new SiloNetwork(ROWS, COLS, fileData.getInputStreams(), fileData.getOutputStreams(),
+                        executionMode);
+            } catch (IllegalArgumentException e) {
+                showAlert(Alert.AlertType.ERROR, "Invalid input file", e.getMessage());
+                System.exit(1);
+            }
+            network.setProgramCompiler(programCompiler);
+            if (replayPath != null) {
+                openReplay();
+            }
+            applySpeed(network.getClock());
+            network.registerMBean();
+            try {
+                network.getRoutes().validate(fileData.getSiloInstructions(), network.getProgramCache());
+            } catch (IllegalArgumentException e) {
+                showAlert(Alert.AlertType.WARNING, "Invalid silo program", e.getMessage());
+            }
         } else {
             System.exit(0);
         }
     }
 
+    /**
+     * The openReplay method opens the trace given with --replay and hands
+     * it to the renderer, with the streams of the network to show the
+     * values the trace reads and writes. The trace has to come from the
+     * same input file.
+     */
+    private void openReplay() {
+        try {
+            if (replayer != null) {
+                replayer.close();
+            }
+            replayer = new TraceReplayer(replayPath);
+        } catch (IOException e) {
+            showAlert(Alert.AlertType.ERROR, "Invalid trace file", e.getMessage());
+            System.exit(1);
+        }
+        if (replayer.getNumRows() != ROWS || replayer.getNumCols() != COLS
+                || replayer.getNumInputs() != network.getInputStreams().size()
+                || replayer.getNumOutputs() != network.getOutputStreams().size()) {
+            showAlert(Alert.AlertType.ERROR, "Invalid trace file",
+                    "The trace was not recorded from " + inputFile.getName());
+            System.exit(1);
+        }
+        renderer.setReplay(replayer, network.getInputStreams(), network.getOutputStreams());
+        network.startInputStreams();
+    }
+
     /**
      * The populateGridPaneWithSilos method adds the silos to the GridPane.
      */
@@ -150,6 +259,7 @@ public class AssemblySilosGUI extends Application {
         int gridRows = ROWS + 2;
         int gridCols = COLS + 2;
         int counter = 0;
+        siloGraphics = new SiloGraphic[ROWS][COLS];
         for (int row = 0; row < gridRows; row++) {
             for (int col = 0; col < gridCols; col++) {
                 if (row == 0 || row == gridRows - 1 || col == 0 || col == gridCols - 1) {
@@ -162,8 +272,12 @@ public class AssemblySilosGUI extends Application {
                         program = fileData.getSiloInstructions().get(counter);
                     }
                     SiloState silo = network.createSilo(row - 1, col - 1);
-                    silo.getSiloGraphic().setCodeArea(program);
-                    gridPane.add(silo.getSiloGraphic(), col, row);
+                    SiloGraphic siloGraphic = new SiloGraphic();
+                    siloGraphic.setCodeArea(program);
+                    silo.setCode(program);
+                    renderer.addSilo(silo, siloGraphic);
+                    siloGraphics[row - 1][col - 1] = siloGraphic;
+                    gridPane.add(siloGraphic, col, row);
                     counter++;
                 }
             }
@@ -181,7 +295,8 @@ public class AssemblySilosGUI extends Application {
         //For each input & out put stream, get graphic and add to streamsBox
         for (int i = 0; i < network.getInputStreams().size(); i++) {
             Stream stream = network.getInputStreams().get(i);
-            StreamGraphic streamGraphic = stream.getStreamGraphic();
+            StreamGraphic streamGraphic = new StreamGraphic(stream);
+            renderer.addStream(streamGraphic);
             streamGraphic.setStreamLabel("IN." + (char)('A' + i));
             streamsBox.getChildren().add(streamGraphic);
             GridPane.setHalignment(streamGraphic.getStreamLabel(), HPos.CENTER);
@@ -189,7 +304,10 @@ public class AssemblySilosGUI extends Application {
         }
         for (int i = 0; i < network.getOutputStreams().size(); i++) {
             Stream stream = network.getOutputStreams().get(i);
-            StreamGraphic streamGraphic = stream.getStreamGraphic();
+            // Only the values on display are kept in memory
+            stream.setWindow(StreamGraphic.WINDOW);
+            StreamGraphic streamGraphic = new StreamGraphic(stream);
+            renderer.addStream(streamGraphic);
             streamGraphic.setStreamLabel("OUT." + (char)('A' + i));
             streamsBox.getChildren().add(streamGraphic);
             GridPane.setHalignment(streamGraphic.getStreamLabel(), HPos.CENTER);
@@ -217,16 +335,118 @@ public class AssemblySilosGUI extends Application {
     }
 
 
-    private HBox createButtonBox(Button startButton, Button pauseButton, Button stopButton) {
+    private HBox createButtonBox(Button startButton, Button pauseButton, Button stopButton, Button saveButton,
+                                 ComboBox<String> speedBox, Label clockLabel) {
+        VBox speedDisplay = new VBox(speedBox, clockLabel);
+        speedDisplay.setAlignment(Pos.CENTER);
+        speedDisplay.setSpacing(5);
+
         HBox buttonBox = new HBox();
-        buttonBox.getChildren().addAll(startButton, pauseButton, stopButton);
+        buttonBox.getChildren().addAll(startButton, pauseButton, stopButton, saveButton, speedDisplay);
         buttonBox.setAlignment(Pos.BOTTOM_CENTER);
         buttonBox.setSpacing(20);
         return buttonBox;
     }
 
+    /**
+     * The createSpeedBox method creates the speed control. Changing the
+     * selection retunes the EngineClock of the running network right away.
+     */
+    private ComboBox<String> createSpeedBox() {
+        ComboBox<String> speedBox = new ComboBox<>();
+        speedBox.getItems().addAll(SPEEDS);
+        speedBox.setValue(speed);
+        speedBox.setStyle("-fx-background-color: black; -fx-text-fill: white; -fx-border-color: white; -fx-border-width: 2px; -fx-min-height: 50;");
+        speedBox.setOnAction(event -> {
+            speed = speedBox.getValue();
+            applySpeed(network.getClock());
+        });
+        return speedBox;
+    }
+
+    private void applySpeed(EngineClock clock) {
+        if (speed.equals("TURBO")) {
+            clock.setUnthrottled();
+            renderer.setReplayRate(Double.POSITIVE_INFINITY);
+        } else {
+            double rate = Double.parseDouble(speed.substring(0, speed.indexOf(' ')));
+            clock.setTickRate(rate);
+            renderer.setReplayRate(rate);
+        }
+    }
+
+    /**
+     * The createClockLabel method creates a label showing the achieved
+     * cycles per second and the mean and maximum tick jitter, refreshed
+     * once per second.
+     */
+    private Label createClockLabel() {
+        Label clockLabel = new Label("CPS: 0");
+        clockLabel.setFont(Font.loadFont(getClass().getResourceAsStream("/fonts/Silo_Font.TTF"), 12));
+        clockLabel.setStyle("-fx-text-fill: white;");
+
+        Timeline timeline = new Timeline(new KeyFrame(Duration.seconds(1), event -> {
+            EngineClock.Statistics statistics = network.getClock().sample();
+            clockLabel.setText(String.format("CPS: %.1f%nJITTER: %.2f / %.2f MS",
+                    statistics.getCyclesPerSecond(),
+                    statistics.getMeanJitterNanos() / 1e6,
+                    statistics.getMaxJitterNanos() / 1e6));
+        }));
+        timeline.setCycleCount(Timeline.INDEFINITE);
+        timeline.play();
+        return clockLabel;
+    }
+
+    /**
+     * The watchForDeadlock method checks twice a second whether the network
+     * has run into a Deadlock. The network is then paused, which writes out
+     * the output files, and a dialog names the port every silo waits on.
+     */
+    private void watchForDeadlock(Button pauseButton) {
+        Timeline timeline = new Timeline(new KeyFrame(Duration.millis(500), event -> {
+            Deadlock deadlock = network.getDeadlock();
+            if (deadlock == null || deadlock == shownDeadlock) {
+                return;
+            }
+            shownDeadlock = deadlock;
+            network.pauseSilos();
+            pauseButton.setText("Step");
+            isPaused = true;
+            // A dialog cannot wait for the user while the timeline is running
+            Platform.runLater(() -> showAlert(Alert.AlertType.INFORMATION,
+                    deadlock.isQuiescent() ? "The network has used up its input" : "The network is deadlocked",
+                    "Cycle " + deadlock.getCycle() + ": " + deadlock + "."));
+        }));
+        timeline.setCycleCount(Timeline.INDEFINITE);
+        timeline.play();
+    }
+
     private void configureStartButton(Button startButton, Button pauseButton) {
         startButton.setOnAction(e -> {
+            if (replayer != null) {
+                renderer.setReplayRunning(true);
+                pauseButton.setText("Pause");
+                isPaused = false;
+                return;
+            }
+            // Pick up any edits made in the code areas before compiling
+            List<String> programs = new ArrayList<>();
+            for (int row = 0; row < ROWS; row++) {
+                for (int col = 0; col < COLS; col++) {
+                    programs.add(siloGraphics[row][col].getCodeArea());
+                }
+            }
+            try {
+                network.getRoutes().validate(programs, network.getProgramCache());
+            } catch (IllegalArgumentException ex) {
+                showAlert(Alert.AlertType.ERROR, "Invalid silo program", ex.getMessage());
+                return;
+            }
+            for (int row = 0; row < ROWS; row++) {
+                for (int col = 0; col < COLS; col++) {
+                    network.getSilo(row, col).setCode(programs.get(row * COLS + col));
+                }
+            }
             network.startSilos();
             network.startInputStreams();
             pauseButton.setText("Pause");
@@ -234,9 +454,29 @@ public class AssemblySilosGUI extends Application {
         });
     }
 
+    /**
+     * Shows a dialog describing a problem with the input file or the code
+     * of a silo, and waits until it is closed.
+     */
+    private void showAlert(Alert.AlertType type, String header, String message) {
+        Alert alert = new Alert(type);
+        alert.setTitle("Assembly Silos");
+        alert.setHeaderText(header);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+
     private void configurePauseButton(Button pauseButton) {
         pauseButton.setOnAction(event -> {
-            if (!isPaused) {
+            if (replayer != null) {
+                if (!isPaused) {
+                    renderer.setReplayRunning(false);
+                    pauseButton.setText("Step");
+                    isPaused = true;
+                } else {
+                    renderer.stepReplay();
+                }
+            } else if (!isPaused) {
                 network.pauseSilos();
                 pauseButton.setText("Step");
                 isPaused = true;
@@ -252,6 +492,55 @@ public class AssemblySilosGUI extends Application {
         });
     }
 
+    /**
+     * The Save button writes a checkpoint of the network next to the input
+     * file, which --resume picks up again. The network keeps running. The
+     * checkpoint waits for the next cycle boundary, so it is taken and
+     * written on a thread of its own, and the button is disabled until it
+     * is done.
+     */
+    private void configureSaveButton(Button saveButton) {
+        saveButton.setOnAction(event -> {
+            Path path = Paths.get(inputFile.getPath() + ".checkpoint");
+            saveButton.setDisable(true);
+            Thread thread = new Thread(() -> {
+                try {
+                    Checkpoint checkpoint = network.checkpoint();
+                    checkpoint.write(path);
+                    Platform.runLater(() -> showAlert(Alert.AlertType.INFORMATION, "Checkpoint saved",
+                            "Cycle " + checkpoint.getCycle() + " was saved to " + path
+                                    + ". Resume it with --resume=" + path));
+                } catch (IOException | InterruptedException | IllegalStateException e) {
+                    Platform.runLater(() -> showAlert(Alert.AlertType.ERROR, "Could not save checkpoint",
+                            e.getMessage()));
+                } finally {
+                    Platform.runLater(() -> saveButton.setDisable(false));
+                }
+            }, "checkpoint");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * The resumeCheckpoint method loads the checkpoint given with --resume
+     * into the network and shows its programs. Start continues the run.
+     */
+    private void resumeCheckpoint() {
+        try {
+            Checkpoint checkpoint = Checkpoint.read(resumePath);
+            network.restore(checkpoint);
+            for (int row = 0; row < ROWS; row++) {
+                for (int col = 0; col < COLS; col++) {
+                    siloGraphics[row][col].setCodeArea(checkpoint.getCode(row, col));
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            showAlert(Alert.AlertType.ERROR, "Invalid checkpoint", e.getMessage());
+            System.exit(1);
+        }
+    }
+
     /**
      * The styleButton method applies a consistent style to the buttons.
      */
@@ -281,21 +570,20 @@ public class AssemblySilosGUI extends Application {
     }
 
     /**
-     * The reset method stops the simulation and resets the layout, allowing
-     * the user to restart the simulation with the same input file.
+     * The reset method stops the simulation and puts the network back to
+     * the start of the input file, allowing the user to restart it. The
+     * network is reset in place: silo threads, code areas and graphics
+     * are kept, and the renderer shows the reset state on the next frame.
      */
 
     public void reset() {
-        network.stopSilos();
-        network.stopStreams();
-
-        parseInputFile();
-
-        GridPane gridPane = createGridPane();
-        HBox streamsBox = populateStreams(gridPane);
-        VBox sideDisplay = createSideDisplay(streamsBox, buttonBox);
-        populateGridPaneWithSilos(gridPane);
-        root.getChildren().clear();
-        root.getChildren().addAll(sideDisplay, gridPane);
+        try {
+            network.reset();
+        } catch (IOException e) {
+            showAlert(Alert.AlertType.ERROR, "Could not reset streams", e.getMessage());
+        }
+        if (replayer != null) {
+            openReplay();
+        }
     }
 }
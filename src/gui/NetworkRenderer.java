@@ -0,0 +1,147 @@
+package gui;
+
+import javafx.animation.AnimationTimer;
+import network.SiloState;
+import network.Stream;
+import network.TraceReplayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The NetworkRenderer keeps the silo and stream graphics in sync with the
+ * network. Instead of queueing a Platform.runLater call for every register
+ * change, it samples the state of every silo and stream once per display
+ * pulse and lets each graphic update the labels that changed. The amount of
+ * UI work per frame therefore depends on the size of the grid, not on how
+ * fast the network runs.
+ *
+ * With a TraceReplayer set, the silo graphics show the replayed state
+ * instead, and the renderer itself advances the replay every frame by as
+ * many cycles as the replay rate asks for.
+ */
+public class NetworkRenderer extends AnimationTimer {
+    // Cycles replayed per frame at most, so the display keeps up
+    private static final int MAX_REPLAY_CYCLES = 100_000;
+
+    private final List<SiloState> silos = new ArrayList<>();
+    private final List<SiloGraphic> siloGraphics = new ArrayList<>();
+    private final List<StreamGraphic> streamGraphics = new ArrayList<>();
+
+    private TraceReplayer replayer;
+    private List<Stream> replayInputs;
+    private List<Stream> replayOutputs;
+    private boolean replayRunning;
+    private double replayRate = 1;
+    private double replayDue;
+    private long lastFrame;
+
+    /**
+     * The addSilo and addStream methods register a graphic to be refreshed
+     * every frame. Silos are added row by row.
+     */
+    public void addSilo(SiloState silo, SiloGraphic siloGraphic) {
+        silos.add(silo);
+        siloGraphics.add(siloGraphic);
+    }
+
+    public void addStream(StreamGraphic streamGraphic) {
+        streamGraphics.add(streamGraphic);
+    }
+
+    /**
+     * Removes every registered graphic, used when the layout is rebuilt.
+     */
+    public void clear() {
+        silos.clear();
+        siloGraphics.clear();
+        streamGraphics.clear();
+    }
+
+    /**
+     * Shows a replayed trace instead of the network. Values the trace takes
+     * from input streams and writes to output streams are taken from and
+     * added to the given streams, so the stream graphics follow the replay.
+     * The replay starts paused.
+     */
+    public void setReplay(TraceReplayer replayer, List<Stream> inputs, List<Stream> outputs) {
+        this.replayer = replayer;
+        replayInputs = inputs;
+        replayOutputs = outputs;
+        replayRunning = false;
+        replayDue = 0;
+    }
+
+    /**
+     * The setReplayRunning, setReplayRate and stepReplay methods control
+     * the replay like the buttons control a network. A rate of infinity
+     * replays MAX_REPLAY_CYCLES per frame.
+     */
+    public void setReplayRunning(boolean running) {
+        replayRunning = running;
+        replayDue = 0;
+    }
+
+    public void setReplayRate(double cyclesPerSecond) {
+        replayRate = cyclesPerSecond;
+    }
+
+    public void stepReplay() {
+        advanceReplay(1);
+    }
+
+    private void advanceReplay(long cycles) {
+        try {
+            for (long i = 0; i < cycles; i++) {
+                if (!replayer.next()) {
+                    replayRunning = false;
+                    return;
+                }
+                for (int e = 0; e < replayer.getEventCount(); e++) {
+                    if (replayer.isOutput(e)) {
+                        replayOutputs.get(replayer.getStream(e)).addValue(replayer.getValue(e));
+                    } else {
+                        Stream input = replayInputs.get(replayer.getStream(e));
+                        // Never wait on the application thread for a value the trace says was there
+                        if (input.getCurrentIndex() < input.size() || input.getSource() != null) {
+                            input.take();
+                        }
+                    }
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            System.out.println("Could not replay trace: " + e.getMessage());
+            replayRunning = false;
+        }
+    }
+
+    /**
+     * Called by JavaFX once per frame on the application thread.
+     */
+    @Override
+    public void handle(long now) {
+        if (replayer != null) {
+            if (replayRunning) {
+                replayDue = Math.min(replayDue + replayRate * (now - lastFrame) / 1e9, MAX_REPLAY_CYCLES);
+                long cycles = (long) replayDue;
+                replayDue -= cycles;
+                advanceReplay(cycles);
+            }
+            lastFrame = now;
+            int numCols = replayer.getNumCols();
+            for (int i = 0; i < siloGraphics.size(); i++) {
+                siloGraphics.get(i).render(replayer, i / numCols, i % numCols);
+            }
+        } else {
+            for (int i = 0; i < silos.size(); i++) {
+                siloGraphics.get(i).render(silos.get(i));
+            }
+        }
+        for (StreamGraphic streamGraphic : streamGraphics) {
+            streamGraphic.render();
+        }
+    }
+}
@@ -9,6 +9,10 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.control.Label;
 import javafx.scene.text.Font;
+import network.Port;
+import network.SiloState;
+import network.TraceRecorder;
+import network.TraceReplayer;
 
 import java.util.concurrent.Callable;
 
@@ -23,6 +27,9 @@ import java.util.concurrent.Callable;
  * Each silo also features transfer value labels. When a silo sends a
  * number to another silo, these labels (represented by <, >, ^, v)
  * will be shown graphically.
+ *
+ * The graphic does not follow every change of its SiloState. The GUI calls
+ * render once per frame with the silo's latest state instead.
  */
 public class SiloGraphic extends GridPane {
 
@@ -42,6 +49,15 @@ public class SiloGraphic extends GridPane {
     private Label leftLabel;
     private Label rightLabel;
     // components representing the transfer values in each direction (UP, DOWN, LEFT, and RIGHT).
+    private int shownAcc;
+    private int shownBak;
+    private SiloState.Mode shownMode = SiloState.Mode.IDLE;
+    private int shownReadMask;
+    private int shownWriteMask;
+    private final int[] shownTransferValues = new int[Port.COUNT];
+    // the values currently displayed, so render only updates labels that changed
+    private final int[] transferValues = new int[Port.COUNT];
+    // the values being written on each port, as passed to render
 
 
     /**
@@ -264,6 +280,66 @@ public class SiloGraphic extends GridPane {
         }
     }
 
+    /**
+     * The render method copies the current state of a silo onto the
+     * graphic. It is called once per frame on the JavaFX application thread
+     * and only touches the labels whose values changed since the last frame.
+     */
+    public void render(SiloState silo) {
+        int writeMask = silo.getWriteMask();
+        for (int port = 0; port < Port.COUNT; port++) {
+            if ((writeMask & 1 << port) != 0) {
+                transferValues[port] = silo.getTransferValue(port);
+            }
+        }
+        render(silo.getAcc(), silo.getBak(), silo.getMode(), silo.getReadMask(), writeMask, transferValues);
+    }
+
+    /**
+     * Renders the state of a silo replayed from a trace, see TraceReplayer.
+     */
+    public void render(TraceReplayer replayer, int row, int col) {
+        int mode = replayer.getMode(row, col);
+        int bit = 1 << replayer.getPort(row, col);
+        transferValues[replayer.getPort(row, col)] = replayer.getTransferValue(row, col);
+        render(replayer.getAcc(row, col), replayer.getBak(row, col),
+                mode == TraceRecorder.READ ? SiloState.Mode.READ
+                        : mode == TraceRecorder.WRITE ? SiloState.Mode.WRITE : SiloState.Mode.IDLE,
+                mode == TraceRecorder.READ ? bit : 0, mode == TraceRecorder.WRITE ? bit : 0, transferValues);
+    }
+
+    private void render(int acc, int bak, SiloState.Mode mode, int readMask, int writeMask, int[] values) {
+        if (acc != shownAcc) {
+            setAccVariable(acc);
+            shownAcc = acc;
+        }
+        if (bak != shownBak) {
+            setBakVariable(bak);
+            shownBak = bak;
+        }
+        if (mode != shownMode) {
+            setModeVariable(mode.name());
+            shownMode = mode;
+        }
+
+        for (int port = 0; port < Port.COUNT; port++) {
+            int bit = 1 << port;
+            if ((writeMask & bit) != 0) {
+                int value = values[port];
+                if ((shownWriteMask & bit) == 0 || value != shownTransferValues[port]) {
+                    updateTransferValue(value, Port.name(port));
+                    shownTransferValues[port] = value;
+                }
+            }
+            boolean visible = ((readMask | writeMask) & bit) != 0;
+            if (visible != (((shownReadMask | shownWriteMask) & bit) != 0)) {
+                setTransferLabelVisible(Port.name(port), visible);
+            }
+        }
+        shownReadMask = readMask;
+        shownWriteMask = writeMask;
+    }
+
     /**
      * Sets the visibility of the transfer label in the specified direction.
     */
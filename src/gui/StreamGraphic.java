@@ -13,10 +13,13 @@ import network.Stream;
  * This class is used to create a visual representation of a Stream object.
  * The streams are used to show silos either receiving input or sending output
  * to other silos. The stream is just a number, accompanied by an arrow graphic
- * that is generated in siloGraphic.
+ * that is generated in siloGraphic. The GUI calls render once per frame to
+ * bring the graphic up to date with its Stream. At most WINDOW values are
+ * shown, older ones scroll out of the streamTextArea.
  */
 
 public class StreamGraphic extends VBox {
+    public static final int WINDOW = 1000;
 
     private final Label streamLabel;
     // A Label component used for displaying the stream's title.
@@ -28,6 +31,10 @@ public class StreamGraphic extends VBox {
     // A TextArea component that displays the values of the stream.
     private final Stream stream;
     // A reference to the associated Stream object.
+    private int shownFirst;
+    private int shownSize;
+    private int shownIndex = -1;
+    // Which values are in the streamTextArea, and which current value is shown.
 
     /**
      * Represents a visual representation of a Stream object, which can be either an input or output stream
@@ -55,6 +62,7 @@ public class StreamGraphic extends VBox {
         streamHeaderLabel.setFont(Font.loadFont(getClass().getResourceAsStream("/fonts/Silo_Font.TTF"), 16));
 
         getChildren().addAll(streamHeaderLabel, currentValueLabel, streamTextArea);
+        render();
     }
 
     /**
@@ -73,21 +81,45 @@ public class StreamGraphic extends VBox {
     }
 
     /**
-     * Updates the text in the streamTextArea based on the values in the associated Stream object
+     * Brings the graphic up to date with the stream. Values added since the
+     * last call are appended to the streamTextArea, unless that would show
+     * more than WINDOW values, or the stream has been reset, in which case
+     * the text is replaced by the last WINDOW values. The current value
+     * label is only touched when an input stream has moved on.
      */
-    public void updateGraphic() {
-        StringBuilder streamText = new StringBuilder();
-        for (int i = 0; i < stream.getValues().size(); i++) {
-            streamText.append(stream.getValues().get(i)).append("\n");
+    public void render() {
+        int size = stream.size();
+        if (size != shownSize) {
+            boolean replace = size < shownSize || size - shownFirst > WINDOW;
+            int first = replace ? Math.max(0, size - WINDOW) : shownSize;
+            StringBuilder streamText = new StringBuilder();
+            try {
+                for (int i = first; i < size; i++) {
+                    streamText.append(stream.getValue(i)).append("\n");
+                }
+            } catch (IndexOutOfBoundsException e) {
+                // The stream moved past these values while reading, try again next frame
+                return;
+            }
+            if (replace) {
+                streamTextArea.setText(streamText.toString());
+                shownFirst = first;
+            } else {
+                streamTextArea.appendText(streamText.toString());
+            }
+            shownSize = size;
         }
-        streamTextArea.setText(streamText.toString());
 
         //if stream is an input stream
         if (stream.isInput()) {
-            if (!stream.getValues().isEmpty()) {
-                currentValueLabel.setText("VAL: " + stream.getCurrentValue());
-            } else {
-                currentValueLabel.setText("VAL: N/A");
+            int index = stream.getCurrentIndex();
+            if (index != shownIndex) {
+                if (size > 0) {
+                    currentValueLabel.setText("VAL: " + stream.getCurrentValue());
+                } else {
+                    currentValueLabel.setText("VAL: N/A");
+                }
+                shownIndex = index;
             }
         }
     }
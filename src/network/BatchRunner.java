@@ -0,0 +1,378 @@
+package network;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The BatchRunner runs many input files without the GUI:
+ *
+ *   java -cp assembly-silos.jar network.BatchRunner [options] [input].txt ...
+ *
+ *   --cycles=N       cycles to run every network for, 1000000 by default
+ *   --timeout=S      seconds a single network may run, no limit by default
+ *   --parallelism=N  networks run at the same time, one per core by default
+ *   --out=DIR        where the result files go, next to the inputs by default
+ *   --optimize=MODE  fast or accurate, see ProgramOptimizer, none by default
+ *   --fast-forward   skip through loops the networks settle into, see
+ *                    LockstepEngine.setFastForward
+ *
+ * Every file is run in its own LockstepEngine, which needs no threads of
+ * its own and shares nothing with the other jobs, so the jobs are spread
+ * over a ForkJoinPool and idle workers steal the jobs that are left. A job
+ * ends early in the first cycle in which none of its silos can make
+ * progress anymore. Each job writes [input].txt.result with its status,
+ * cycle count, wall time and the values of every output stream, and a line
+ * per job is printed once all of them are done, in the order the files
+ * were given.
+ */
+public final class BatchRunner {
+    private static final long DEFAULT_CYCLES = 1_000_000;
+    // Silo steps run between two checks of the timeout
+    private static final int CHUNK = 1 << 16;
+
+    private BatchRunner() {
+    }
+
+    /**
+     * The Result of one job. The status is OK when the network ran for all
+     * its cycles, DONE when it stopped earlier because it had used up its
+     * input and DEADLOCK when its silos got stuck waiting on each other, in
+     * both cases with the port every silo waits on as the message, see
+     * Deadlock. It is TIMEOUT when the network ran out of time first and
+     * ERROR when the file could not be loaded or run, in which case the
+     * message says why.
+     */
+    public static final class Result {
+        public static final String OK = "OK";
+        public static final String DONE = "DONE";
+        public static final String DEADLOCK = "DEADLOCK";
+        public static final String TIMEOUT = "TIMEOUT";
+        public static final String ERROR = "ERROR";
+
+        private final Path input;
+        private final String status;
+        private final String message;
+        private final long cycles;
+        private final long wallNanos;
+        private final long[] outputCounts;
+        private final int[][] outputValues;
+
+        Result(Path input, String status, String message, long cycles, long wallNanos,
+               long[] outputCounts, int[][] outputValues) {
+            this.input = input;
+            this.status = status;
+            this.message = message;
+            this.cycles = cycles;
+            this.wallNanos = wallNanos;
+            this.outputCounts = outputCounts;
+            this.outputValues = outputValues;
+        }
+
+        public Path getInput() {
+            return input;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public long getCycles() {
+            return cycles;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public int getNumOutputs() {
+            return outputCounts.length;
+        }
+
+        /**
+         * The getOutputCount and getOutputValues methods return how many
+         * values an output stream received and the values themselves. A
+         * stream writing to a file has its count but no values, and so has
+         * every stream of a Result returned by runAll, whose values are in
+         * the result file.
+         */
+        public long getOutputCount(int index) {
+            return outputCounts[index];
+        }
+
+        public int[] getOutputValues(int index) {
+            return outputValues[index];
+        }
+
+        /**
+         * Returns the same Result with the counts of the output streams but
+         * none of their values.
+         */
+        Result withoutValues() {
+            int[][] none = new int[outputValues.length][];
+            Arrays.fill(none, new int[0]);
+            return new Result(input, status, message, cycles, wallNanos, outputCounts, none);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long cycles = DEFAULT_CYCLES;
+        long timeoutNanos = 0;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        Path outDir = null;
+        int optimization = ProgramOptimizer.NONE;
+        boolean fastForward = false;
+        List<Path> inputs = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--cycles=")) {
+                    cycles = Long.parseLong(arg.substring("--cycles=".length()));
+                } else if (arg.startsWith("--timeout=")) {
+                    timeoutNanos = (long) (Double.parseDouble(arg.substring("--timeout=".length())) * 1e9);
+                } else if (arg.startsWith("--parallelism=")) {
+                    parallelism = Integer.parseInt(arg.substring("--parallelism=".length()));
+                } else if (arg.startsWith("--out=")) {
+                    outDir = Paths.get(arg.substring("--out=".length()));
+                } else if (arg.startsWith("--optimize=")) {
+                    optimization = ProgramOptimizer.modeFromName(arg.substring("--optimize=".length()));
+                } else if (arg.equals("--fast-forward")) {
+                    fastForward = true;
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else {
+                    inputs.add(Paths.get(arg));
+                }
+            }
+            if (inputs.isEmpty() || cycles < 0 || timeoutNanos < 0 || parallelism < 1) {
+                throw new IllegalArgumentException("Nothing to run");
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Usage: BatchRunner [--cycles=N] [--timeout=S] [--parallelism=N] [--out=DIR]"
+                    + " [--optimize=fast|accurate] [--fast-forward] [input file] ...");
+            System.exit(1);
+        }
+        if (outDir != null) {
+            Files.createDirectories(outDir);
+        }
+
+        long start = System.nanoTime();
+        Result[] results = runAll(inputs, cycles, timeoutNanos, optimization, fastForward, parallelism,
+                outDir);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int failed = 0;
+        for (Result result : results) {
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("%-8s %12d cycles %10.1f ms  %s", result.getStatus(), result.getCycles(),
+                    result.getWallNanos() / 1e6, result.getInput()));
+            for (int k = 0; k < result.getNumOutputs(); k++) {
+                line.append(String.format("  OUT.%c %d", (char) ('A' + k), result.getOutputCount(k)));
+            }
+            if (result.getMessage() != null) {
+                line.append("  ").append(result.getMessage());
+            }
+            System.out.println(line);
+            if (!result.getStatus().equals(Result.OK) && !result.getStatus().equals(Result.DONE)) {
+                failed++;
+            }
+        }
+        System.out.printf("%d networks in %.3f s on %d workers, %d not OK%n", results.length, seconds, parallelism,
+                failed);
+        System.exit(failed == 0 ? 0 : 2);
+    }
+
+    /**
+     * The runAll method runs every input file on a ForkJoinPool with the
+     * given parallelism and returns the results in the order of the files.
+     * With outDir set, the result files are written there instead of next
+     * to the inputs. A timeout of 0 means no timeout. Once a result file
+     * is written, its Result only keeps the number of values of every
+     * output stream.
+     */
+    public static Result[] runAll(List<Path> inputs, long cycles, long timeoutNanos, int optimization,
+                                  boolean fastForward, int parallelism, Path outDir) {
+        Result[] results = new Result[inputs.size()];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Jobs(inputs, results, 0, inputs.size(), cycles, timeoutNanos, optimization, fastForward,
+                    outDir));
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * Splits a range of jobs in halves until a single job is left, so the
+     * halves end up in the queues of different workers and are stolen by
+     * whichever worker runs out of work first.
+     */
+    private static final class Jobs extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> inputs;
+        private final Result[] results;
+        private final int from;
+        private final int to;
+        private final long cycles;
+        private final long timeoutNanos;
+        private final int optimization;
+        private final boolean fastForward;
+        private final Path outDir;
+
+        Jobs(List<Path> inputs, Result[] results, int from, int to, long cycles, long timeoutNanos,
+             int optimization, boolean fastForward, Path outDir) {
+            this.inputs = inputs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.cycles = cycles;
+            this.timeoutNanos = timeoutNanos;
+            this.optimization = optimization;
+            this.fastForward = fastForward;
+            this.outDir = outDir;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Jobs(inputs, results, from, middle, cycles, timeoutNanos, optimization, fastForward,
+                                outDir),
+                        new Jobs(inputs, results, middle, to, cycles, timeoutNanos, optimization, fastForward,
+                                outDir));
+            } else if (to > from) {
+                Path input = inputs.get(from);
+                Result result = run(input, cycles, timeoutNanos, optimization, fastForward);
+                Path resultPath = (outDir != null ? outDir : input.toAbsolutePath().getParent())
+                        .resolve(input.getFileName() + ".result");
+                try {
+                    writeResult(result, resultPath);
+                    // The values are in the file now, a large batch would otherwise keep all of them
+                    result = result.withoutValues();
+                } catch (IOException e) {
+                    result = new Result(input, Result.ERROR, "Could not write " + resultPath + ": " + e.getMessage(),
+                            result.getCycles(), result.getWallNanos(), new long[0], new int[0][]);
+                }
+                results[from] = result;
+            }
+        }
+    }
+
+    /**
+     * The run method loads one input file and runs it in a LockstepEngine
+     * for the given number of cycles, until the timeout has passed or until
+     * no silo can make progress, with its programs optimized in the given
+     * ProgramOptimizer mode and fast forward on or off. Problems with the
+     * file are reported in the Result rather than thrown.
+     */
+    public static Result run(Path input, long cycles, long timeoutNanos, int optimization,
+                             boolean fastForward) {
+        long start = System.nanoTime();
+        Parser.InputFileData fileData = null;
+        LockstepEngine engine = null;
+        try {
+            fileData = new Parser().parseInputFile(input.toString());
+            engine = new LockstepEngine(fileData);
+            engine.optimize(optimization);
+            engine.setFastForward(fastForward);
+            String status = Result.OK;
+            String message = null;
+            long deadline = start + timeoutNanos;
+            int chunkCycles = Math.max(1, CHUNK / (fileData.getNumRows() * fileData.getNumCols()));
+            while (engine.getCycle() < cycles) {
+                long chunk = Math.min(chunkCycles, cycles - engine.getCycle());
+                engine.runCycles(chunk);
+                Deadlock deadlock = engine.getDeadlock();
+                if (deadlock != null) {
+                    status = deadlock.isQuiescent() ? Result.DONE : Result.DEADLOCK;
+                    message = deadlock.toString();
+                    break;
+                }
+                if (timeoutNanos > 0 && System.nanoTime() - deadline > 0) {
+                    status = Result.TIMEOUT;
+                    break;
+                }
+            }
+            engine.close();
+            long wallNanos = System.nanoTime() - start;
+
+            int numOutputs = engine.getNumOutputStreams();
+            long[] counts = new long[numOutputs];
+            int[][] values = new int[numOutputs][];
+            for (int k = 0; k < numOutputs; k++) {
+                counts[k] = engine.getOutputCount(k);
+                values[k] = engine.getOutputValues(k);
+            }
+            return new Result(input, status, message, engine.getCycle(), wallNanos, counts, values);
+        } catch (IOException | RuntimeException e) {
+            if (engine != null) {
+                try {
+                    engine.close();
+                } catch (IOException ignored) {
+                    // Already failing, the first problem is the one reported
+                }
+            } else if (fileData != null) {
+                closeStreams(fileData);
+            }
+            String message = e.getMessage() != null ? e.getMessage() : e.toString();
+            return new Result(input, Result.ERROR, message, engine != null ? engine.getCycle() : 0,
+                    System.nanoTime() - start, new long[0], new int[0][]);
+        }
+    }
+
+    /**
+     * Closes the files opened for the streams of an input file that never
+     * made it into an engine.
+     */
+    private static void closeStreams(Parser.InputFileData fileData) {
+        List<Stream> streams = new ArrayList<>(fileData.getInputStreams());
+        streams.addAll(fileData.getOutputStreams());
+        for (Stream stream : streams) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // Nothing was written to it
+            }
+        }
+    }
+
+    /**
+     * Writes a result file: the status, cycle count and wall time, then
+     * every output stream with its count and values, one per line.
+     */
+    private static void writeResult(Result result, Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("input " + result.getInput() + "\n");
+            writer.write("status " + result.getStatus() + "\n");
+            if (result.getMessage() != null) {
+                writer.write("message " + result.getMessage() + "\n");
+            }
+            writer.write("cycles " + result.getCycles() + "\n");
+            writer.write(String.format("wall %.3f ms%n", result.getWallNanos() / 1e6));
+            for (int k = 0; k < result.getNumOutputs(); k++) {
+                int[] values = result.getOutputValues(k);
+                writer.write("OUT." + (char) ('A' + k) + " " + result.getOutputCount(k) + " values"
+                        + (values.length < result.getOutputCount(k) ? ", written to its file" : "") + "\n");
+                for (int value : values) {
+                    writer.write(Integer.toString(value));
+                    writer.write('\n');
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The BinaryIntSink writes values as raw little-endian int32, the format
+ * MappedIntSource reads. Values are put into a direct buffer which goes to
+ * the FileChannel in a single write once it is full.
+ */
+public final class BinaryIntSink implements IntSink {
+    private static final int BUFFER_BYTES = 64 << 10;
+
+    private final FileChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    public BinaryIntSink(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        if (bytes.remaining() < Integer.BYTES) {
+            flush();
+        }
+        bytes.putInt(value);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    @Override
+    public void truncate() throws IOException {
+        bytes.clear();
+        channel.truncate(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
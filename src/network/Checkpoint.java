@@ -0,0 +1,231 @@
+package network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * A Checkpoint is the state of a SiloNetwork at a cycle boundary, taken
+ * with SiloNetwork.checkpoint and resumed with SiloNetwork.restore: the
+ * program, registers and instruction index of every silo, the value a silo
+ * was still writing to a neighbour, and the position and buffered values of
+ * every stream.
+ *
+ * It is saved in a compact binary file: MAGIC and VERSION, then varints,
+ * with registers zigzag encoded. Input streams backed by a file only store
+ * how far the file has been read, so the input file has to be at hand when
+ * resuming. Output streams store the values they keep in memory; values
+ * already written to an output file are not part of the checkpoint.
+ */
+public final class Checkpoint {
+    public static final int MAGIC = 0x41534350;
+    public static final int VERSION = 1;
+
+    final int numRows;
+    final int numCols;
+    final long cycle;
+    final String[] codes;
+    final int[] instructionIndex;
+    final int[] acc;
+    final int[] bak;
+    final int[] pendingWritePort;
+    final int[] pendingWriteValue;
+    final long[] inputFirst;
+    final int[][] inputValues;
+    final long[] inputSourceValuesRead;
+    final long[] outputFirst;
+    final int[][] outputValues;
+
+    Checkpoint(int numRows, int numCols, long cycle, int numInputs, int numOutputs) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.cycle = cycle;
+        int numSilos = numRows * numCols;
+        codes = new String[numSilos];
+        instructionIndex = new int[numSilos];
+        acc = new int[numSilos];
+        bak = new int[numSilos];
+        pendingWritePort = new int[numSilos];
+        pendingWriteValue = new int[numSilos];
+        inputFirst = new long[numInputs];
+        inputValues = new int[numInputs][];
+        inputSourceValuesRead = new long[numInputs];
+        outputFirst = new long[numOutputs];
+        outputValues = new int[numOutputs][];
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * Returns the cycle the checkpoint was taken at.
+     */
+    public long getCycle() {
+        return cycle;
+    }
+
+    /**
+     * Returns the program of the silo at the given row and column.
+     */
+    public String getCode(int row, int col) {
+        return codes[row * numCols + col];
+    }
+
+    /**
+     * Returns whether another checkpoint holds exactly the same state.
+     */
+    boolean sameState(Checkpoint other) {
+        return cycle == other.cycle
+                && Arrays.equals(codes, other.codes)
+                && Arrays.equals(instructionIndex, other.instructionIndex)
+                && Arrays.equals(acc, other.acc)
+                && Arrays.equals(bak, other.bak)
+                && Arrays.equals(pendingWritePort, other.pendingWritePort)
+                && Arrays.equals(pendingWriteValue, other.pendingWriteValue)
+                && Arrays.equals(inputFirst, other.inputFirst)
+                && Arrays.deepEquals(inputValues, other.inputValues)
+                && Arrays.equals(inputSourceValuesRead, other.inputSourceValuesRead)
+                && Arrays.equals(outputFirst, other.outputFirst)
+                && Arrays.deepEquals(outputValues, other.outputValues);
+    }
+
+    /**
+     * The write method saves the checkpoint to a file, replacing it if it
+     * exists.
+     */
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            writeVarint(out, VERSION);
+            writeVarint(out, numRows);
+            writeVarint(out, numCols);
+            writeVarlong(out, cycle);
+            writeVarint(out, inputValues.length);
+            writeVarint(out, outputValues.length);
+            for (int s = 0; s < codes.length; s++) {
+                out.writeUTF(codes[s]);
+                writeVarint(out, instructionIndex[s]);
+                writeVarint(out, zigzag(acc[s]));
+                writeVarint(out, zigzag(bak[s]));
+                writeVarint(out, pendingWritePort[s] + 1);
+                if (pendingWritePort[s] >= 0) {
+                    writeVarint(out, zigzag(pendingWriteValue[s]));
+                }
+            }
+            for (int k = 0; k < inputValues.length; k++) {
+                writeVarlong(out, inputFirst[k]);
+                writeVarlong(out, inputSourceValuesRead[k]);
+                writeValues(out, inputValues[k]);
+            }
+            for (int k = 0; k < outputValues.length; k++) {
+                writeVarlong(out, outputFirst[k]);
+                writeValues(out, outputValues[k]);
+            }
+        }
+    }
+
+    /**
+     * The read method loads a checkpoint saved with write.
+     * @throws IOException if the file is not a checkpoint or cannot be read
+     */
+    public static Checkpoint read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a checkpoint file");
+            }
+            int version = readVarint(in);
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            int numRows = readVarint(in);
+            int numCols = readVarint(in);
+            long cycle = readVarlong(in);
+            int numInputs = readVarint(in);
+            int numOutputs = readVarint(in);
+            Checkpoint checkpoint = new Checkpoint(numRows, numCols, cycle, numInputs, numOutputs);
+            for (int s = 0; s < numRows * numCols; s++) {
+                checkpoint.codes[s] = in.readUTF();
+                checkpoint.instructionIndex[s] = readVarint(in);
+                checkpoint.acc[s] = unzigzag(readVarint(in));
+                checkpoint.bak[s] = unzigzag(readVarint(in));
+                checkpoint.pendingWritePort[s] = readVarint(in) - 1;
+                if (checkpoint.pendingWritePort[s] >= 0) {
+                    checkpoint.pendingWriteValue[s] = unzigzag(readVarint(in));
+                }
+            }
+            for (int k = 0; k < numInputs; k++) {
+                checkpoint.inputFirst[k] = readVarlong(in);
+                checkpoint.inputSourceValuesRead[k] = readVarlong(in);
+                checkpoint.inputValues[k] = readValues(in);
+            }
+            for (int k = 0; k < numOutputs; k++) {
+                checkpoint.outputFirst[k] = readVarlong(in);
+                checkpoint.outputValues[k] = readValues(in);
+            }
+            return checkpoint;
+        }
+    }
+
+    private static void writeValues(DataOutputStream out, int[] values) throws IOException {
+        writeVarint(out, values.length);
+        for (int value : values) {
+            writeVarint(out, zigzag(value));
+        }
+    }
+
+    private static int[] readValues(DataInputStream in) throws IOException {
+        int[] values = new int[readVarint(in)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = unzigzag(readVarint(in));
+        }
+        return values;
+    }
+
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static void writeVarint(DataOutputStream out, int n) throws IOException {
+        writeVarlong(out, n & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarlong(DataOutputStream out, long n) throws IOException {
+        while ((n & ~0x7FL) != 0) {
+            out.writeByte((int) (n & 0x7F | 0x80));
+            n >>>= 7;
+        }
+        out.writeByte((int) n);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        return (int) readVarlong(in);
+    }
+
+    private static long readVarlong(DataInputStream in) throws IOException {
+        long n = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readByte();
+            n |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return n;
+            }
+        }
+        throw new IOException("Invalid number in checkpoint");
+    }
+}
@@ -0,0 +1,111 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * A Deadlock describes a network in which no silo can ever make progress
+ * again: every silo that still runs is waiting to read from or write to a
+ * port that nothing will serve, or has halted. It lists each of those
+ * silos with the port it waits on, together with the cycle in which the
+ * engine found it.
+ *
+ * Not every such network is broken. When no value is stuck on its way and
+ * the silos wait, directly or through each other, for an input stream that
+ * has run out, the network has simply consumed its input, and isQuiescent
+ * says so. Otherwise the silos are waiting on each other for good.
+ */
+public final class Deadlock {
+    public static final int READ = 0;
+    public static final int WRITE = 1;
+    public static final int HALTED = 2;
+
+    private final long cycle;
+    // Every entry holds the row, column, kind of wait and port of a silo
+    private final List<int[]> waits = new ArrayList<>();
+    private boolean inputDrained;
+    private boolean stuck;
+
+    Deadlock(long cycle) {
+        this.cycle = cycle;
+    }
+
+    /**
+     * Adds a silo that waits on a port, or has halted, in which case the
+     * port is ignored. Drained tells whether a read waits on an input
+     * stream that has run out of values.
+     */
+    void add(int row, int col, int kind, int port, boolean drained) {
+        waits.add(new int[] {row, col, kind, port});
+        if (kind == READ && drained) {
+            inputDrained = true;
+        } else if (kind != READ) {
+            stuck = true;
+        }
+    }
+
+    public long getCycle() {
+        return cycle;
+    }
+
+    /**
+     * The isQuiescent method returns whether the network has simply run out
+     * of input: no silo has halted or holds a value nobody takes, and some
+     * silo waits on an input stream that has run out, or no silo runs at
+     * all. Otherwise the silos are deadlocked.
+     */
+    public boolean isQuiescent() {
+        return !stuck && (inputDrained || waits.isEmpty());
+    }
+
+    /**
+     * The getNumSilos, getRow, getCol, getKind and getPort methods describe
+     * the waiting silos, in the order of the grid. The kind is READ, WRITE
+     * or HALTED.
+     */
+    public int getNumSilos() {
+        return waits.size();
+    }
+
+    public int getRow(int index) {
+        return waits.get(index)[0];
+    }
+
+    public int getCol(int index) {
+        return waits.get(index)[1];
+    }
+
+    public int getKind(int index) {
+        return waits.get(index)[2];
+    }
+
+    public int getPort(int index) {
+        return waits.get(index)[3];
+    }
+
+    /**
+     * Returns one line listing the waiting silos, such as
+     * "silo 0,0 reads UP, silo 0,1 writes LEFT".
+     */
+    @Override
+    public String toString() {
+        if (waits.isEmpty()) {
+            return "no silo runs";
+        }
+        StringBuilder text = new StringBuilder();
+        for (int[] wait : waits) {
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append("silo ").append(wait[0]).append(',').append(wait[1]);
+            switch (wait[2]) {
+                case READ -> text.append(" reads ").append(Port.name(wait[3]));
+                case WRITE -> text.append(" writes ").append(Port.name(wait[3]));
+                default -> text.append(" halted");
+            }
+        }
+        return text.toString();
+    }
+}
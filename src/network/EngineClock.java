@@ -0,0 +1,192 @@
+package network;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The EngineClock controls how fast a SiloNetwork goes from one cycle to the
+ * next. The network calls awaitTick once per cycle, when the last silo
+ * reaches the barrier. In fixed rate mode the call parks until the next
+ * tick is due. Deadlines are absolute (start + n * period), so time spent
+ * executing instructions does not add up into drift. If the network falls
+ * more than a whole tick behind, the clock starts counting from now again
+ * instead of firing a burst of late ticks. In unthrottled mode awaitTick
+ * returns at once and the network runs as fast as the barrier allows.
+ *
+ * The clock also keeps track of the achieved cycle rate and of the tick
+ * jitter, the distance between when a tick was due and when it fired.
+ */
+public class EngineClock {
+    public static final double DEFAULT_TICK_RATE = 1.0;
+
+    private volatile long periodNanos;
+    private volatile boolean paused;
+    private volatile Thread tickingThread;
+    private long nextDeadline;
+    private long lastPeriodNanos;
+
+    private volatile long tickCount;
+    private final AtomicLong jitterSum = new AtomicLong();
+    private final AtomicLong jitterMax = new AtomicLong();
+    private volatile long jitterSamples;
+
+    private long sampleTicks;
+    private long sampleJitterSum;
+    private long sampleJitterSamples;
+    private long sampleTime = System.nanoTime();
+
+    /**
+     * Creates a clock running at DEFAULT_TICK_RATE cycles per second.
+     */
+    public EngineClock() {
+        setTickRate(DEFAULT_TICK_RATE);
+    }
+
+    /**
+     * Sets a fixed number of cycles per second. Takes effect immediately,
+     * even if a tick is currently being waited for.
+     */
+    public void setTickRate(double cyclesPerSecond) {
+        if (cyclesPerSecond <= 0) {
+            throw new IllegalArgumentException("Tick rate must be positive: " + cyclesPerSecond);
+        }
+        periodNanos = Math.max(1, (long) (1_000_000_000L / cyclesPerSecond));
+        wakeTickingThread();
+    }
+
+    /**
+     * Removes all throttling, every tick fires as soon as it is reached.
+     */
+    public void setUnthrottled() {
+        periodNanos = 0;
+        wakeTickingThread();
+    }
+
+    public boolean isUnthrottled() {
+        return periodNanos == 0;
+    }
+
+    /**
+     * While paused, ticks fire immediately so single steps are not held
+     * back. The schedule starts over when the clock is resumed.
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        wakeTickingThread();
+    }
+
+    /**
+     * The awaitTick method blocks until the next cycle is due. It is called
+     * by a single thread at a time, the one completing the barrier phase.
+     */
+    public void awaitTick() {
+        long period = periodNanos;
+        if (period == 0 || paused) {
+            lastPeriodNanos = 0;
+            tickCount++;
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (lastPeriodNanos != period) {
+            // First tick, or the rate was changed: start a fresh schedule
+            lastPeriodNanos = period;
+            nextDeadline = now + period;
+        }
+
+        tickingThread = Thread.currentThread();
+        while (now < nextDeadline && periodNanos == period && !paused) {
+            LockSupport.parkNanos(this, nextDeadline - now);
+            now = System.nanoTime();
+        }
+        tickingThread = null;
+
+        if (now >= nextDeadline) {
+            long jitter = now - nextDeadline;
+            jitterSum.addAndGet(jitter);
+            jitterMax.accumulateAndGet(jitter, Math::max);
+            jitterSamples++;
+            nextDeadline += period;
+            if (now - nextDeadline > period) {
+                nextDeadline = now + period;
+            }
+        }
+        tickCount++;
+    }
+
+    private void wakeTickingThread() {
+        Thread thread = tickingThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Returns the number of ticks since the clock was created.
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Continues counting from the given tick, used when a network resumes
+     * from a checkpoint before it starts.
+     */
+    void setTickCount(long tickCount) {
+        this.tickCount = tickCount;
+    }
+
+    /**
+     * The sample method returns the cycle rate and jitter measured since the
+     * previous call. It is meant to be called periodically by a single
+     * reader, such as a GUI timer.
+     */
+    public Statistics sample() {
+        long now = System.nanoTime();
+        long ticks = tickCount;
+        long sum = jitterSum.get();
+        long samples = jitterSamples;
+        long max = jitterMax.getAndSet(0);
+
+        double seconds = (now - sampleTime) / 1e9;
+        double cyclesPerSecond = seconds > 0 ? (ticks - sampleTicks) / seconds : 0;
+        long newSamples = samples - sampleJitterSamples;
+        long meanJitter = newSamples > 0 ? (sum - sampleJitterSum) / newSamples : 0;
+
+        sampleTime = now;
+        sampleTicks = ticks;
+        sampleJitterSum = sum;
+        sampleJitterSamples = samples;
+        return new Statistics(cyclesPerSecond, meanJitter, max);
+    }
+
+    /**
+     * Statistics holds the achieved cycle rate and tick jitter of one
+     * sampling window.
+     */
+    public static class Statistics {
+        private final double cyclesPerSecond;
+        private final long meanJitterNanos;
+        private final long maxJitterNanos;
+
+        public Statistics(double cyclesPerSecond, long meanJitterNanos, long maxJitterNanos) {
+            this.cyclesPerSecond = cyclesPerSecond;
+            this.meanJitterNanos = meanJitterNanos;
+            this.maxJitterNanos = maxJitterNanos;
+        }
+
+        public double getCyclesPerSecond() {
+            return cyclesPerSecond;
+        }
+
+        public long getMeanJitterNanos() {
+            return meanJitterNanos;
+        }
+
+        public long getMaxJitterNanos() {
+            return maxJitterNanos;
+        }
+    }
+}
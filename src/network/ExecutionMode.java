@@ -0,0 +1,74 @@
+package network;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The ExecutionMode enum decides which kind of thread the Interpreter of
+ * every silo runs on. Streams have no thread of their own. PLATFORM gives
+ * each silo its own OS thread. VIRTUAL runs them on virtual threads, which
+ * only need a few carrier threads no matter how large the grid is. Every
+ * place a silo can block parks it with LockSupport: the Phaser barrier, a
+ * port cell in the Grid it reads from or writes to, an input Stream that
+ * is empty, a silo that ran ahead waiting for the others, a paused
+ * Interpreter and the EngineClock pacing the cycles. None of them waits
+ * inside a synchronized block, so a blocked silo gives its carrier back
+ * instead of pinning it.
+ *
+ * Virtual threads are only available on Java 21 and newer. They are looked
+ * up reflectively so the project still builds and runs on Java 17.
+ */
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    /**
+     * Returns true if this mode can be used on the running JVM.
+     */
+    public boolean isSupported() {
+        if (this == PLATFORM) {
+            return true;
+        }
+        try {
+            virtualThreadFactory("probe-");
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a ThreadFactory for this mode. Threads are named with the
+     * given prefix followed by a counter.
+     */
+    public ThreadFactory threadFactory(String namePrefix) {
+        if (this == VIRTUAL) {
+            return virtualThreadFactory(namePrefix);
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> new Thread(runnable, namePrefix + counter.getAndIncrement());
+    }
+
+    /**
+     * Returns the mode with the given name, ignoring case.
+     */
+    public static ExecutionMode fromName(String name) {
+        return valueOf(name.toUpperCase());
+    }
+
+    private static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException e) {
+            throw new IllegalStateException("Virtual threads need Java 21 or newer", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Virtual threads are not enabled on this JVM", e.getCause());
+        }
+    }
+}
@@ -1,55 +1,154 @@
 package network;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.SynchronousQueue;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
  *
  * The Grid class in this Java code represents a grid of silos
  * in the SiloNetwork. It has a 2D array of SiloState objects
- * representing the silos and a 2D array of maps that contain
- * SynchronousQueues for communication between silos. Each map
- * in the queues array has four keys representing the four directions
- * (UP, DOWN, LEFT, RIGHT) and the corresponding SynchronousQueues.
+ * representing the silos and a flat table of port cells used for
+ * communication between silos. Every silo has one cell per Port
+ * direction, holding the value a neighbour is handing to it through
+ * that port. Cells are indexed by (row * numCols + col) * Port.COUNT + port.
+ *
+ * A cell is a single-slot handoff carrying a primitive int and a full or
+ * empty flag, with the same blocking rules as a SynchronousQueue: put
+ * returns once the value has been taken and take waits until a value is
+ * there. Each cell only ever has one writer (the neighbour) and one reader
+ * (the silo that owns it), so the handoff needs no locks. A waiting thread
+ * spins briefly and then parks until the other side unparks it. Threads
+ * that park are counted by the PortWaits of the network.
  */
 
 public class Grid {
+    private static final int EMPTY = 0;
+    private static final int FULL = 1;
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 128 : 0;
+    private static final int YIELDS = 8;
+
+    private static final VarHandle STATE = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle WAITER = MethodHandles.arrayElementVarHandle(Thread[].class);
+
     private final int numRows;
     private final int numCols;
     private final SiloState[][] silos;
-    //Map of string to SynchronousQueue of Integer
-    private final Map<String, SynchronousQueue<Integer>>[][] queues;
+    private final int[] cellValues;
+    private final int[] cellStates;
+    private final Thread[] readers;
+    private final Thread[] writers;
+    private PortWaits portWaits = PortWaits.NONE;
 
     /**
-     * The constructor initializes the numRows, numCols, silos, and queues
-     * attributes. It creates a HashMap for each cell in the grid, and for
-     * each direction, it associates a new SynchronousQueue<Integer> with
-     * the corresponding key.
+     * The constructor initializes the numRows, numCols, silos, and the
+     * port cell arrays. Every cell starts out empty.
      */
     public Grid(int numRows, int numCols) {
         this.numRows = numRows;
         this.numCols = numCols;
         this.silos = new SiloState[numRows][numCols];
-        this.queues = new Map[numRows][numCols];
-        for (int r = 0; r < numRows; r++) {
-            for (int c = 0; c < numCols; c++) {
-                queues[r][c] = new HashMap<>();
-                queues[r][c].put("UP", new SynchronousQueue<>());
-                queues[r][c].put("DOWN", new SynchronousQueue<>());
-                queues[r][c].put("LEFT", new SynchronousQueue<>());
-                queues[r][c].put("RIGHT", new SynchronousQueue<>());
+        int numCells = numRows * numCols * Port.COUNT;
+        cellValues = new int[numCells];
+        cellStates = new int[numCells];
+        readers = new Thread[numCells];
+        writers = new Thread[numCells];
+    }
+
+    /**
+     * The cellIndex method returns the index of the cell through which the
+     * silo at row and column receives values on the given port, or -1 if
+     * there is no silo at that position.
+     */
+    public int cellIndex(int row, int col, int port) {
+        if (row < 0 || row >= numRows || col < 0 || col >= numCols) {
+            return -1;
+        }
+        return (row * numCols + col) * Port.COUNT + port;
+    }
+
+    /**
+     * The put method hands a value to the reader of a cell and waits until
+     * the reader has taken it.
+     */
+    public void put(int cell, int value) throws InterruptedException {
+        cellValues[cell] = value;
+        STATE.setRelease(cellStates, cell, FULL);
+        Thread reader = (Thread) WAITER.getVolatile(readers, cell);
+        if (reader != null) {
+            LockSupport.unpark(reader);
+        }
+        awaitState(cell, EMPTY, writers);
+    }
+
+    /**
+     * The take method waits until a value has been put in a cell, empties
+     * the cell and returns the value.
+     */
+    public int take(int cell) throws InterruptedException {
+        awaitState(cell, FULL, readers);
+        int value = cellValues[cell];
+        STATE.setVolatile(cellStates, cell, EMPTY);
+        Thread writer = (Thread) WAITER.getVolatile(writers, cell);
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+        return value;
+    }
+
+    /**
+     * Waits until a cell reaches the given state. The waiting thread is
+     * published in waiters before the state is checked again, so the other
+     * side either sees it and unparks it or the check already succeeds.
+     */
+    private void awaitState(int cell, int state, Thread[] waiters) throws InterruptedException {
+        for (int i = 0; i < SPINS; i++) {
+            if ((int) STATE.getAcquire(cellStates, cell) == state) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        for (int i = 0; i < YIELDS; i++) {
+            if ((int) STATE.getAcquire(cellStates, cell) == state) {
+                return;
             }
+            Thread.yield();
         }
+        WAITER.setVolatile(waiters, cell, Thread.currentThread());
+        portWaits.started();
+        try {
+            while ((int) STATE.getVolatile(cellStates, cell) != state) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            WAITER.setVolatile(waiters, cell, null);
+            portWaits.ended();
+        }
+    }
+
+    void setPortWaits(PortWaits portWaits) {
+        this.portWaits = portWaits;
+    }
+
+    /**
+     * Returns whether a value is waiting in a cell to be taken.
+     */
+    public boolean isFull(int cell) {
+        return (int) STATE.getVolatile(cellStates, cell) == FULL;
     }
 
     /**
-     * The getQueue method returns the SynchronousQueue<Integer> associated
-     * with a specific row, column, and direction.
+     * Empties every cell, dropping values that were handed over but not
+     * taken. No silo may be using a cell at the same time.
      */
-    public SynchronousQueue<Integer> getQueue(int row, int col, String direction) {
-        return queues[row][col].get(direction);
+    public void clear() {
+        Arrays.fill(cellStates, EMPTY);
+        VarHandle.releaseFence();
     }
 
     /**
@@ -0,0 +1,171 @@
+package network;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The IntRingBuffer is a growable first-in first-out queue of primitive
+ * ints, used to hold the values of input and output streams without boxing.
+ * Values live in a power of two sized array addressed by position & mask,
+ * where positions count every value ever added. The array doubles when it
+ * runs full, so a buffer can hold as many values as fit in memory.
+ *
+ * One thread may add values while another one removes them. The head and
+ * tail positions are volatile, so neither side needs a lock: a value is
+ * written before the tail moves past it, and a slot is only reused after
+ * the head has moved past it. Other threads, such as the GUI, may look at
+ * values with get, as long as they tolerate reading a slot that is being
+ * reused.
+ */
+public final class IntRingBuffer {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private volatile int[] values;
+    private volatile long head;
+    private volatile long tail;
+
+    /**
+     * Creates an empty buffer with room for DEFAULT_CAPACITY values.
+     */
+    public IntRingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty buffer with room for at least the given number of
+     * values before it has to grow.
+     */
+    public IntRingBuffer(int initialCapacity) {
+        if (initialCapacity < 0 || initialCapacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + initialCapacity);
+        }
+        int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1);
+        values = new int[capacity];
+    }
+
+    /**
+     * The add method appends a value, growing the array when it is full.
+     * Only one thread may add values at a time.
+     */
+    public void add(int value) {
+        int[] array = values;
+        long t = tail;
+        if (t - head == array.length) {
+            array = grow(array, t);
+        }
+        array[(int) t & (array.length - 1)] = value;
+        tail = t + 1;
+    }
+
+    /**
+     * Copies the values that have not been removed yet into an array twice
+     * as large. The remover keeps reading the old array until it sees the
+     * new one, which holds the same values at the same positions.
+     */
+    private int[] grow(int[] array, long t) {
+        if (array.length == 1 << 30) {
+            throw new IllegalStateException("Stream buffer is full");
+        }
+        int[] larger = new int[array.length << 1];
+        for (long i = head; i < t; i++) {
+            larger[(int) i & (larger.length - 1)] = array[(int) i & (array.length - 1)];
+        }
+        values = larger;
+        return larger;
+    }
+
+    /**
+     * The remove method takes the oldest value out of the buffer. Only one
+     * thread may remove values at a time.
+     * @throws NoSuchElementException if the buffer is empty
+     */
+    public int remove() {
+        long h = head;
+        if (h == tail) {
+            throw new NoSuchElementException();
+        }
+        int[] array = values;
+        int value = array[(int) h & (array.length - 1)];
+        head = h + 1;
+        return value;
+    }
+
+    /**
+     * Returns the oldest value without removing it.
+     * @throws NoSuchElementException if the buffer is empty
+     */
+    public int peek() {
+        long h = head;
+        if (h == tail) {
+            throw new NoSuchElementException();
+        }
+        int[] array = values;
+        return array[(int) h & (array.length - 1)];
+    }
+
+    /**
+     * Returns the value at an absolute position, counted from the first
+     * value ever added. Positions from getHead up to getTail hold a value.
+     * A removed value can still be read until its slot is reused, which
+     * lets other threads look at a value that was just taken.
+     */
+    public int get(long position) {
+        int[] array = values;
+        if (position < 0 || position >= tail || tail - position > array.length) {
+            throw new IndexOutOfBoundsException("Position " + position + " is not in the buffer");
+        }
+        return array[(int) position & (array.length - 1)];
+    }
+
+    /**
+     * Empties the buffer and moves both positions to the given one, so the
+     * next value added gets that position. Neither side may use the buffer
+     * at the same time.
+     */
+    public void reset(long position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Invalid position: " + position);
+        }
+        head = position;
+        tail = position;
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    /**
+     * Returns the number of values that have been added but not removed.
+     */
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * The getHead and getTail methods return how many values have been
+     * removed from and added to the buffer since it was created.
+     */
+    public long getHead() {
+        return head;
+    }
+
+    public long getTail() {
+        return tail;
+    }
+
+    /**
+     * Returns a copy of the values that have not been removed yet, oldest
+     * first.
+     */
+    public int[] toArray() {
+        long h = head;
+        long t = tail;
+        int[] array = values;
+        int[] copy = new int[(int) (t - h)];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = array[(int) (h + i) & (array.length - 1)];
+        }
+        return copy;
+    }
+}
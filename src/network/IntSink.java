@@ -0,0 +1,36 @@
+package network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The IntSink interface receives the values of an output stream that are
+ * written to a file instead of being kept in memory. Values are collected
+ * in a fixed size buffer and written out a batch at a time, when the buffer
+ * is full, when flush is called or when the sink is closed.
+ */
+public interface IntSink extends Closeable {
+    void write(int value) throws IOException;
+
+    /**
+     * Writes out the values collected so far.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Drops everything written so far, collected or already in the file,
+     * as when the network is reset.
+     */
+    void truncate() throws IOException;
+
+    /**
+     * Creates or truncates a file for values. A text file gets one decimal
+     * value per line, a binary file raw little-endian int32 values.
+     */
+    static IntSink open(Path path, boolean binary) throws IOException {
+        return binary ? new BinaryIntSink(path) : new TextIntSink(path);
+    }
+}
@@ -0,0 +1,51 @@
+package network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The IntSource interface supplies the values of an input stream that are
+ * kept outside the program file. Values are pulled in batches while the
+ * silo next to the stream consumes them, so a source can be much larger
+ * than the heap and the run can start before the whole file has been read.
+ */
+public interface IntSource extends Closeable {
+    /**
+     * Reads up to length values into buffer, starting at offset.
+     * @return the number of values read, or -1 when the source is exhausted
+     */
+    int read(int[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Skips over up to count values, as when resuming a checkpoint.
+     * @return the number of values skipped, less than count only at the end
+     */
+    default long skip(long count) throws IOException {
+        int[] buffer = new int[(int) Math.min(count, 4096)];
+        long skipped = 0;
+        while (skipped < count) {
+            int read = read(buffer, 0, (int) Math.min(count - skipped, buffer.length));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    /**
+     * Goes back to the first value, as when the network is reset.
+     */
+    void rewind() throws IOException;
+
+    /**
+     * Opens a file of values. A text file holds decimal integers separated
+     * by whitespace, a binary file holds raw little-endian int32 values.
+     */
+    static IntSource open(Path path, boolean binary) throws IOException {
+        return binary ? new MappedIntSource(path) : new TextIntSource(path);
+    }
+}
@@ -1,8 +1,6 @@
 package network;
 
-import commands.Instruction;
-
-import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
@@ -14,12 +12,21 @@ import java.util.List;
  */
 
 public class Interpreter implements Runnable {
+    // The most instructions a silo runs ahead of the others at once
+    static final int MAX_RUN_AHEAD = 1024;
+
     private final SiloState siloState;
-    private List<Instruction> instructions;
-    private boolean isRunning = false;
-    private boolean isAlive = true;
-    private boolean step = false;
-    private Instruction currentInstruction;
+    // The program set for the silo, which its thread picks up at its next instruction
+    private volatile Program nextProgram;
+    // Only used by the interpreter thread
+    private Program program;
+    // The compiled form of the program once the silo is hot enough
+    private ProgramCode code;
+    private long executed;
+    private volatile boolean isRunning = false;
+    private volatile boolean isAlive = true;
+    private volatile boolean step = false;
+    private volatile Thread thread;
 
 
     /**
@@ -37,45 +44,250 @@ public class Interpreter implements Runnable {
      * instructions and waits for synchronization with other silos. If step is
      * true, the interpreter executes a single instruction and then waits for
      * synchronization. If neither isRunning nor step is true, the thread
-     * sleeps for 10 milliseconds.
+     * parks until one of them is set. The speed of the network is set by
+     * the EngineClock, which paces the synchronization barrier.
      */
     public void run() {
+        thread = Thread.currentThread();
         //Thread Behavior
         while (isAlive) {
             if (isRunning) {
-                currentInstruction = instructions.get(siloState.getInstructionIndex());
-                currentInstruction.execute(siloState);
-                siloState.setInstructionIndex(siloState.getInstructionIndex() + 1);
+                executeCycle();
+            } else if (step) {
+                executeCycle();
+                step = false;
+            } else {
+                siloState.clearAbort();
+                LockSupport.park(this);
+            }
+        }
 
-                if (siloState.getInstructionIndex() >= instructions.size()) {
-                    siloState.setInstructionIndex(0);
-                }
+    }
 
+    /**
+     * Executes one instruction and waits for the other silos. An
+     * instruction whose port operation is aborted by a reset is dropped,
+     * and the reset completes the cycle instead of the silo. While running,
+     * an instruction that touches no port starts a run ahead instead. A
+     * program set since the last instruction replaces the one running, and
+     * is interpreted until it is hot again.
+     */
+    private void executeCycle() {
+        siloState.instructionStarted();
+        // Check again once started, so a pause either sees the silo executing or stops it here
+        if (!isRunning && !step) {
+            siloState.instructionCancelled();
+            return;
+        }
+        Program next = nextProgram;
+        if (next != program) {
+            program = next;
+            code = null;
+            executed = 0;
+        }
+        if (!step && program.portFree[siloState.getInstructionIndex()] && !siloState.hasPendingWrite()
+                && siloState.canRunAhead()) {
+            runAhead();
+            return;
+        }
+        try {
+            executeInstruction();
+        } catch (SiloState.PortOperationAborted e) {
+            return;
+        }
+        siloState.instructionFinished();
+        siloState.waitForSynchronization();
+    }
+
+    /**
+     * The executeInstruction method executes the instruction at the current
+     * instruction index by dispatching on its opcode, then moves on to the
+     * next instruction. Jumps set the instruction index directly, and their
+     * targets are already resolved and wrapped by the compiler. Once the
+     * silo has executed as many instructions as the network's
+     * ProgramCompiler asks for, the instructions run as compiled code.
+     */
+    private void executeInstruction() {
+        int index = siloState.getInstructionIndex();
+        if (siloState.hasPendingWrite()) {
+            // Resumed from a checkpoint taken while this instruction was writing
+            try {
+                siloState.writePendingValue();
+            } catch (InterruptedException e) {
+                System.out.println("Interrupted: " + e.getMessage());
+            }
+            advance(index);
+            return;
+        }
+        ProgramCode compiled = code;
+        if (compiled == null) {
+            ProgramCompiler compiler = siloState.getProgramCompiler();
+            if (compiler != null && ++executed > compiler.getThreshold()) {
+                compiled = code = compiler.compile(program);
+                if (compiled == null) {
+                    // Too long to compile, keep interpreting it
+                    executed = Long.MIN_VALUE;
+                }
+            }
+        }
+        if (compiled != null) {
+            try {
+                siloState.setInstructionIndex(compiled.execute(index, siloState));
+            } catch (InterruptedException e) {
+                System.out.println("Interrupted: " + e.getMessage());
+                advance(index);
+            }
+            return;
+        }
+        switch (program.op[index]) {
+            case Program.NOOP -> siloState.noopMethod();
+            case Program.MOVE -> {
+                int value = readOperand(program.srcKind[index], program.src[index]);
                 try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ignored) {
+                    if (program.dstKind[index] == Program.PORT) {
+                        siloState.writeToPort(program.dst[index], value);
+                    } else {
+                        siloState.setRegisterValue(program.dstKind[index], value);
+                    }
+                } catch (InterruptedException e) {
+                    System.out.println("Interrupted: " + e.getMessage());
                 }
+            }
+            case Program.SWAP -> {
+                int temp = siloState.getAcc();
+                siloState.setAcc(siloState.getBak());
+                siloState.setBak(temp);
+            }
+            case Program.SAVE -> siloState.setBak(siloState.getAcc());
+            case Program.ADD -> {
+                int value = readOperand(program.srcKind[index], program.src[index]);
+                siloState.setAcc(siloState.getAcc() + value);
+            }
+            case Program.SUB -> {
+                int value = readOperand(program.srcKind[index], program.src[index]);
+                siloState.setAcc(siloState.getAcc() - value);
+            }
+            case Program.NEGATE -> siloState.setAcc(-siloState.getAcc());
+            case Program.JUMP -> {
+                siloState.setInstructionIndex(program.src[index]);
+                return;
+            }
+            case Program.JEZ, Program.JNZ, Program.JGZ, Program.JLZ -> {
+                int acc = siloState.getAcc();
+                boolean jump = switch (program.op[index]) {
+                    case Program.JEZ -> acc == 0;
+                    case Program.JNZ -> acc != 0;
+                    case Program.JGZ -> acc > 0;
+                    default -> acc < 0;
+                };
+                if (jump) {
+                    siloState.setInstructionIndex(program.src[index]);
+                    return;
+                }
+            }
+            case Program.JRO -> {
+                int offset = readOperand(program.srcKind[index], program.src[index]);
+                siloState.setInstructionIndex(Math.floorMod(index + offset, program.length));
+                return;
+            }
+        }
 
-                siloState.waitForSynchronization();
-            } else if (step) {
-                currentInstruction = instructions.get(siloState.getInstructionIndex());
-                currentInstruction.execute(siloState);
-                siloState.setInstructionIndex(siloState.getInstructionIndex() + 1);
+        advance(index);
+    }
 
-                if (siloState.getInstructionIndex() >= instructions.size()) {
-                    siloState.setInstructionIndex(0);
-                }
+    /**
+     * Executes instructions up to the next one that reads from or writes
+     * to a port, at most MAX_RUN_AHEAD of them, and lets the silo sleep
+     * through the cycles they take, see RunAheadSchedule.
+     */
+    private void runAhead() {
+        int start = siloState.getInstructionIndex();
+        int[] registers = {siloState.getAcc(), siloState.getBak(), -1};
+        int index = start;
+        int cycles = 0;
+        do {
+            index = executeLocal(program, index, registers);
+            cycles++;
+        } while (cycles < MAX_RUN_AHEAD && program.portFree[index]);
+        siloState.runAhead(start, cycles, index, registers);
+    }
 
-                siloState.waitForSynchronization();
-                step = false;
-            } else {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ignored) {
+    /**
+     * The executeLocal method executes a port free instruction on the
+     * registers ACC and BAK held in the first two elements of the array,
+     * without changing the silo, and returns the index of the next
+     * instruction. A NOOP or a MOVE to a register stores the ordinal of the
+     * Mode it sets in the third element.
+     */
+    static int executeLocal(Program program, int index, int[] registers) {
+        switch (program.op[index]) {
+            case Program.NOOP -> registers[2] = SiloState.Mode.IDLE.ordinal();
+            case Program.MOVE -> {
+                int value = localOperand(program.srcKind[index], program.src[index], registers);
+                if (program.dstKind[index] == Program.ACC) {
+                    registers[0] = value;
+                } else if (program.dstKind[index] == Program.BAK) {
+                    registers[1] = value;
+                }
+                registers[2] = SiloState.Mode.WRITE.ordinal();
+            }
+            case Program.SWAP -> {
+                int temp = registers[0];
+                registers[0] = registers[1];
+                registers[1] = temp;
+            }
+            case Program.SAVE -> registers[1] = registers[0];
+            case Program.ADD -> registers[0] += localOperand(program.srcKind[index], program.src[index], registers);
+            case Program.SUB -> registers[0] -= localOperand(program.srcKind[index], program.src[index], registers);
+            case Program.NEGATE -> registers[0] = -registers[0];
+            case Program.JUMP -> {
+                return program.src[index];
+            }
+            case Program.JEZ, Program.JNZ, Program.JGZ, Program.JLZ -> {
+                int acc = registers[0];
+                boolean jump = switch (program.op[index]) {
+                    case Program.JEZ -> acc == 0;
+                    case Program.JNZ -> acc != 0;
+                    case Program.JGZ -> acc > 0;
+                    default -> acc < 0;
+                };
+                if (jump) {
+                    return program.src[index];
                 }
             }
+            case Program.JRO -> {
+                int offset = localOperand(program.srcKind[index], program.src[index], registers);
+                return Math.floorMod(index + offset, program.length);
+            }
+            default -> throw new IllegalArgumentException("Cannot run ahead over opcode " + program.op[index]);
         }
+        int next = index + 1;
+        return next >= program.length ? 0 : next;
+    }
 
+    private static int localOperand(int kind, int operand, int[] registers) {
+        return switch (kind) {
+            case Program.LITERAL -> operand;
+            case Program.ACC -> registers[0];
+            case Program.BAK -> registers[1];
+            default -> 0;
+        };
+    }
+
+    private void advance(int index) {
+        int next = index + 1;
+        siloState.setInstructionIndex(next >= program.length ? 0 : next);
+    }
+
+    /**
+     * Returns the value of a source operand, reading from a port if needed.
+     */
+    private int readOperand(int kind, int operand) {
+        return switch (kind) {
+            case Program.LITERAL -> operand;
+            case Program.PORT -> siloState.readFromPort(operand);
+            default -> siloState.getRegisterValue(kind);
+        };
     }
 
     /**
@@ -83,29 +295,46 @@ public class Interpreter implements Runnable {
      */
     public void setStep(boolean step) {
         this.step = step;
+        if (step) {
+            wake();
+        }
+    }
+
+    boolean isRunning() {
+        return isRunning;
     }
 
     /**
      * Sets the isRunning attribute, which controls whether the interpreter
-     * should continuously execute instructions or not.
+     * should continuously execute instructions or not. Only starting wakes
+     * the thread, a running interpreter notices a pause on its own.
      */
     public void setRunning(boolean running) {
         isRunning = running;
+        if (running) {
+            wake();
+        }
     }
 
     /**
-     * Sets the instructions attribute, which is a list of Instruction
-     * objects that the interpreter should execute.
+     * Sets the compiled program that the interpreter should execute. The
+     * interpreter thread switches to it before its next instruction, so it
+     * can be set from any thread. Setting the program it already runs
+     * changes nothing and keeps its compiled code.
      */
-    public void setInstructions(List<Instruction> instructions) {
-        this.instructions = instructions;
+    public void setProgram(Program program) {
+        nextProgram = program;
+    }
+
+    public Program getProgram() {
+        return nextProgram;
     }
 
     /**
-     * Returns the size of the instruction list
+     * Returns the number of instructions in the program
      */
     public int getInstructionSize() {
-        return instructions.size();
+        return nextProgram.size();
     }
 
     /**
@@ -114,5 +343,16 @@ public class Interpreter implements Runnable {
      */
     public void kill() {
         isAlive = false;
+        wake();
+    }
+
+    /**
+     * Unparks the interpreter thread so it notices a change of its flags.
+     */
+    private void wake() {
+        Thread current = thread;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
     }
 }
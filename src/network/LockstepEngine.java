@@ -0,0 +1,667 @@
+package network;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The LockstepEngine is a headless alternative to running one Interpreter
+ * thread per silo. It keeps the registers of every silo in flat arrays and
+ * steps all of them in a single loop per cycle, so no thread ever blocks.
+ *
+ * Port transfers follow the same handoff rules as the SynchronousQueues in
+ * Grid: a write waits until the neighbour has taken the value and a read
+ * waits until the neighbour has offered one. Each silo port owns a single
+ * pending value cell. A value posted during a cycle can only be taken in a
+ * later cycle and a writer only notices the take in a later cycle, which
+ * keeps the result independent of the order silos are stepped in. The
+ * state is kept in SiloArrays and the instructions are executed by a
+ * SiloStepper, the same ones the TiledEngine uses.
+ */
+public class LockstepEngine {
+    private static final int WRITING = SiloArrays.WRITING;
+    private static final int HALTED = SiloArrays.HALTED;
+
+    // Event kinds recorded next to the opcodes of jumps, see Events
+    private static final int OUTPUT_EVENT = -1;
+    private static final int INPUT_EVENT = -2;
+    // The longest period, in cycles, that fast forward looks for
+    private static final int MAX_PERIOD = 1 << 16;
+
+    private final SiloArrays silos;
+    private final Stepper stepper;
+    // The parts of silos the trace, the steady state and the getters look at
+    private final int numCols;
+    private final int numSilos;
+    private final Program[] programs;
+    private final int[] active;
+    private final int[] acc;
+    private final int[] bak;
+    private final int[] pc;
+    private final int[] status;
+    private final int[] writeCell;
+    private final int[] busy;
+    private final int[] cellValue;
+    private final boolean[] cellFull;
+
+    private long cycle;
+    private Deadlock deadlock;
+    // Finds periodic behaviour and skips whole periods of it, see setFastForward
+    private SteadyState steadyState;
+    // What the silos do in the period the steady state is recording
+    private Events events;
+    private long skippedCycles;
+    private int optimization = ProgramOptimizer.NONE;
+    private TraceRecorder trace;
+    // The port plus one each silo failed to read from this cycle, while tracing
+    private int[] readStall;
+
+    /**
+     * The constructor compiles the program of every silo. Programs are
+     * given row by row, in the same order as Parser.InputFileData lists
+     * them. Silos without code are left out of the simulation, and so are
+     * silos that can never use a port or change a register, see
+     * Program.isIdleFrom. Their instruction index stays at 0.
+     * @throws IllegalArgumentException if a program does not compile
+     */
+    public LockstepEngine(int numRows, int numCols, List<String> siloPrograms) {
+        silos = new SiloArrays(numRows, numCols, siloPrograms);
+        stepper = new Stepper(silos);
+        this.numCols = numCols;
+        numSilos = silos.numSilos;
+        programs = silos.programs;
+        active = silos.active;
+        acc = silos.acc;
+        bak = silos.bak;
+        pc = silos.pc;
+        status = silos.status;
+        writeCell = silos.writeCell;
+        busy = silos.busy;
+        cellValue = silos.cellValue;
+        cellFull = silos.cellFull;
+    }
+
+    /**
+     * Creates an engine for a parsed input file, with the file's input
+     * and output streams attached. The silo programs are validated against
+     * the streams, so a program using a port with nothing behind it is
+     * reported here instead of halting the silo later.
+     * @throws IllegalArgumentException if a stream or program is misplaced
+     */
+    public LockstepEngine(Parser.InputFileData fileData) {
+        this(fileData.getNumRows(), fileData.getNumCols(), fileData.getSiloInstructions());
+        silos.attach(fileData);
+    }
+
+    /**
+     * Attaches an input stream at the given position outside the grid.
+     * Streams must be attached before the first step.
+     * @throws IllegalArgumentException if the stream is not next to the grid
+     */
+    public void addInputStream(int row, int col, int[] values) {
+        silos.addInputStream(row, col, values);
+    }
+
+    /**
+     * Attaches an input stream whose values are pulled from a source, a
+     * batch at a time, as the silo next to it reads them.
+     * @throws IllegalArgumentException if the stream is not next to the grid
+     */
+    public void addInputStream(int row, int col, IntSource source) {
+        silos.addInputStream(row, col, new int[0]);
+        silos.inputSources.set(silos.inputSources.size() - 1, source);
+    }
+
+    /**
+     * Attaches an output stream at the given position outside the grid.
+     * @throws IllegalArgumentException if the stream is not next to the grid
+     */
+    public void addOutputStream(int row, int col) {
+        silos.addOutputStream(row, col);
+    }
+
+    /**
+     * Attaches an output stream that writes its values to a sink instead
+     * of keeping them, so getOutputValues returns nothing for it.
+     * @throws IllegalArgumentException if the stream is not next to the grid
+     */
+    public void addOutputStream(int row, int col, IntSink sink) {
+        silos.addOutputStream(row, col);
+        silos.outputSinks.set(silos.outputSinks.size() - 1, sink);
+    }
+
+    /**
+     * The run method steps the network for the given number of cycles, or
+     * until it finds a Deadlock, and then flushes the output sinks, so the
+     * files hold every value written so far.
+     */
+    public void run(long cycles) {
+        runCycles(cycles);
+        flush();
+    }
+
+    /**
+     * Steps the network like run does, skipping ahead through steady
+     * states if fast forward is on, but leaves the sinks alone.
+     */
+    void runCycles(long cycles) {
+        long end = cycles > Long.MAX_VALUE - cycle ? Long.MAX_VALUE : cycle + cycles;
+        while (cycle < end && deadlock == null) {
+            step();
+            if (steadyState != null && trace == null) {
+                steadyState.afterCycle(end);
+            }
+        }
+    }
+
+    /**
+     * The setFastForward method turns steady state detection on or off for
+     * run. While it is on, the engine watches for the network settling into
+     * a loop and then skips whole periods of it at once, see SteadyState.
+     * The output streams and the cycle count end up exactly as without it.
+     * Nothing is skipped while a trace is recorded.
+     */
+    public void setFastForward(boolean fastForward) {
+        steadyState = fastForward ? new SteadyState() : null;
+        events = null;
+    }
+
+    /**
+     * Returns how many of the cycles run so far were skipped by fast
+     * forward instead of stepped.
+     */
+    public long getSkippedCycles() {
+        return skippedCycles;
+    }
+
+    /**
+     * Writes out the values the output sinks and the trace have collected
+     * so far.
+     */
+    public void flush() {
+        try {
+            silos.flush();
+            if (trace != null) {
+                trace.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the input sources and output sinks of the engine, writing out
+     * the values the sinks still hold.
+     */
+    public void close() throws IOException {
+        stopTrace();
+        silos.close();
+    }
+
+    /**
+     * The optimize method rewrites the program of every silo with the
+     * ProgramOptimizer, in FAST or CYCLE_ACCURATE mode. Instruction indexes
+     * then refer to the rewritten programs.
+     * @throws IllegalStateException if the engine has already run
+     */
+    public void optimize(int mode) {
+        if (cycle != 0 || trace != null) {
+            throw new IllegalStateException("Programs can only be optimized before the first cycle");
+        }
+        // Shared programs are rewritten once and stay shared
+        Map<Program, Program> optimized = new IdentityHashMap<>();
+        for (int s = 0; s < numSilos; s++) {
+            programs[s] = optimized.computeIfAbsent(programs[s], program -> ProgramOptimizer.optimize(program, mode));
+        }
+        optimization = mode;
+    }
+
+    /**
+     * The startTrace method records every following cycle to a trace file
+     * that a TraceReplayer can play back. Because the engine is
+     * deterministic, the trace of a network is the same on every run.
+     * @throws IllegalStateException if the programs have been optimized,
+     * since a trace shows the instructions as they were written
+     */
+    public void startTrace(Path path) throws IOException {
+        if (optimization != ProgramOptimizer.NONE) {
+            throw new IllegalStateException("Optimized programs cannot be traced");
+        }
+        stopTrace();
+        trace = new TraceRecorder(path, silos.numRows, numCols, silos.inputStreams.size(),
+                silos.outputStreams.size());
+        readStall = new int[numSilos];
+    }
+
+    /**
+     * Stops recording and closes the trace file, if there is one.
+     */
+    public void stopTrace() throws IOException {
+        if (trace != null) {
+            TraceRecorder current = trace;
+            trace = null;
+            readStall = null;
+            current.close();
+        }
+    }
+
+    /**
+     * The step method executes one cycle on every silo. A cycle in which no
+     * silo could do anything leaves every cell, stream and register as it
+     * was, so neither can any later cycle, and the engine records a
+     * Deadlock.
+     */
+    public void step() {
+        long t = ++cycle;
+        stepper.stalls = 0;
+        for (int s : active) {
+            stepper.stepSilo(s, t);
+        }
+        if (stepper.stalls == active.length && deadlock == null) {
+            deadlock = silos.findDeadlock(t);
+        }
+        if (trace != null) {
+            recordCycle();
+        }
+    }
+
+    /**
+     * The getDeadlock method returns the Deadlock found in the first cycle
+     * in which no silo could do anything, or null while the network still
+     * makes progress.
+     */
+    public Deadlock getDeadlock() {
+        return deadlock;
+    }
+
+    private void recordCycle() {
+        try {
+            for (int s = 0; s < numSilos; s++) {
+                Program program = programs[s];
+                if (program == null) {
+                    continue;
+                }
+                int mode = TraceRecorder.IDLE;
+                int port = 0;
+                int value = 0;
+                if (status[s] == WRITING) {
+                    mode = TraceRecorder.WRITE;
+                    port = program.dst[pc[s]];
+                    value = cellValue[writeCell[s]];
+                } else if (status[s] == HALTED) {
+                    mode = TraceRecorder.HALTED;
+                } else if (readStall[s] != 0) {
+                    mode = TraceRecorder.READ;
+                    port = readStall[s] - 1;
+                    readStall[s] = 0;
+                }
+                trace.silo(s, pc[s], acc[s], bak[s], mode, port, value);
+            }
+            trace.endCycle();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The SiloStepper of the engine, which tells the trace and the steady
+     * state what the silos do.
+     */
+    private final class Stepper extends SiloStepper {
+        Stepper(SiloArrays silos) {
+            super(silos);
+        }
+
+        @Override
+        void stalledOnRead(int s, int port) {
+            if (readStall != null) {
+                readStall[s] = port + 1;
+            }
+        }
+
+        @Override
+        void jumped(int s, int op, int value) {
+            if (events != null) {
+                events.add(op, s, value);
+            }
+        }
+
+        @Override
+        void inputTaken(int k, int value) {
+            if (trace != null) {
+                trace.input(k, value);
+            }
+            if (events != null) {
+                events.add(INPUT_EVENT, k, value);
+            }
+        }
+
+        @Override
+        void outputWritten(int k, int value) {
+            if (trace != null) {
+                trace.output(k, value);
+            }
+            if (events != null) {
+                events.add(OUTPUT_EVENT, k, value);
+            }
+        }
+    }
+
+    /**
+     * The Events of a period recorded by the SteadyState, three ints each:
+     * the opcode of a jump with the silo and its ACC or offset, or an
+     * OUTPUT_EVENT or INPUT_EVENT with the stream and the value.
+     */
+    private static final class Events {
+        private int[] entries = new int[48];
+        private int size;
+
+        void add(int kind, int index, int value) {
+            if (size + 3 > entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[size] = kind;
+            entries[size + 1] = index;
+            entries[size + 2] = value;
+            size += 3;
+        }
+    }
+
+    /**
+     * The SteadyState finds a network that has settled into a loop and
+     * skips whole periods of it.
+     *
+     * It first looks for a period in the shape of the network at the end of
+     * every cycle: the instruction index, status and idle cycles of every
+     * silo and which cells hold a value, without any values, which are
+     * hashed and compared with the hash saved at the last power of two
+     * cycles (Brent's cycle detection). A period found that way is then
+     * checked for real by recording the next two periods, during which the
+     * network keeps stepping as usual. Both must end in the same shape,
+     * take the same jumps and read no input, and every register and cell
+     * must change by the same amount in both. The instructions only add,
+     * negate and move values, so every value in every later period then
+     * changes by that same amount again, as long as the jumps stay the
+     * same, including ACC at each conditional jump and every value written
+     * to an output stream. That gives the number of periods until the first
+     * jump goes the other way, and those periods are skipped at once: the
+     * registers and cells are moved ahead, the output values they would
+     * have written are written and the cycle count is advanced. A network
+     * that keeps exactly the same state is the case in which nothing
+     * changes per period.
+     *
+     * A period whose check fails is looked for again at twice the length,
+     * which finds loops that only repeat every other time around.
+     */
+    private final class SteadyState {
+        private long savedHash;
+        private long power = 1;
+        private long distance;
+        private long minPeriod = 1;
+        // The period being checked, 0 while searching, and the cycle the recorded one started in
+        private int period;
+        private long start;
+        private int[] shape;
+        // The values at the start of the recorded periods and at their end
+        private final int[][] values = new int[3][];
+        private Events first;
+
+        SteadyState() {
+            savedHash = hash();
+        }
+
+        /**
+         * Called at the end of every cycle run with fast forward on. The
+         * given cycle is where the run ends, which no skip goes past.
+         */
+        void afterCycle(long end) {
+            if (period == 0) {
+                search();
+                return;
+            }
+            if (cycle - start < period) {
+                return;
+            }
+            // Cycles stepped while tracing, or by calling step, were not seen
+            if (cycle - start > period) {
+                restart(1);
+                return;
+            }
+            if (!Arrays.equals(shape(), shape)) {
+                restart(period * 2L);
+                return;
+            }
+            if (first == null) {
+                values[1] = values();
+                first = events;
+                events = new Events();
+                start = cycle;
+                return;
+            }
+            values[2] = values();
+            Events second = events;
+            events = null;
+            long periods = skippable(first, second, (end - cycle) / period);
+            if (periods > 0) {
+                skip(periods, first, second);
+            }
+            restart(periods < 0 ? period * 2L : 1);
+        }
+
+        private void search() {
+            long hash = hash();
+            distance++;
+            if (hash == savedHash && distance >= minPeriod && distance <= MAX_PERIOD) {
+                period = (int) distance;
+                start = cycle;
+                shape = shape();
+                values[0] = values();
+                first = null;
+                events = new Events();
+            } else if (distance >= power) {
+                savedHash = hash;
+                distance = 0;
+                power *= 2;
+                if (power > 2 * MAX_PERIOD) {
+                    power = 1;
+                    minPeriod = 1;
+                }
+            }
+        }
+
+        private void restart(long minPeriod) {
+            period = 0;
+            first = null;
+            events = null;
+            this.minPeriod = minPeriod;
+            savedHash = hash();
+            distance = 0;
+            power = 1;
+        }
+
+        private long hash() {
+            long hash = 1;
+            for (int s : active) {
+                int cells = 0;
+                for (int port = 0; port < 4; port++) {
+                    cells = cells << 1 | (cellFull[s * 4 + port] ? 1 : 0);
+                }
+                hash = (hash ^ pc[s]) * 0x9E3779B97F4A7C15L;
+                hash = (hash ^ (status[s] << 4 | cells)) * 0x9E3779B97F4A7C15L;
+                hash = (hash ^ busy[s]) * 0x9E3779B97F4A7C15L;
+            }
+            return hash;
+        }
+
+        /**
+         * Returns the state of the network that must repeat exactly, five
+         * ints per active silo.
+         */
+        private int[] shape() {
+            int[] shape = new int[active.length * 5];
+            for (int a = 0; a < active.length; a++) {
+                int s = active[a];
+                int cells = 0;
+                for (int port = 0; port < 4; port++) {
+                    cells = cells << 1 | (cellFull[s * 4 + port] ? 1 : 0);
+                }
+                shape[a * 5] = pc[s];
+                shape[a * 5 + 1] = status[s];
+                shape[a * 5 + 2] = busy[s];
+                shape[a * 5 + 3] = writeCell[s];
+                shape[a * 5 + 4] = cells;
+            }
+            return shape;
+        }
+
+        /**
+         * Returns ACC, BAK and the values of the four cells of every active
+         * silo. The value of an empty cell is never read again, so it is
+         * left at 0.
+         */
+        private int[] values() {
+            int[] values = new int[active.length * 6];
+            for (int a = 0; a < active.length; a++) {
+                int s = active[a];
+                values[a * 6] = acc[s];
+                values[a * 6 + 1] = bak[s];
+                for (int port = 0; port < 4; port++) {
+                    values[a * 6 + 2 + port] = cellFull[s * 4 + port] ? cellValue[s * 4 + port] : 0;
+                }
+            }
+            return values;
+        }
+
+        /**
+         * Returns how many periods after the two recorded ones go the same
+         * way, at most the given number, or -1 if the recorded periods do
+         * not repeat each other.
+         */
+        private long skippable(Events first, Events second, long limit) {
+            for (int j = 0; j < values[0].length; j++) {
+                if (values[2][j] - values[1][j] != values[1][j] - values[0][j]) {
+                    return -1;
+                }
+            }
+            if (first.size != second.size) {
+                return -1;
+            }
+            long periods = limit;
+            for (int e = 0; e < first.size; e += 3) {
+                int kind = first.entries[e];
+                int x0 = first.entries[e + 2];
+                int x1 = second.entries[e + 2];
+                if (kind != second.entries[e] || first.entries[e + 1] != second.entries[e + 1]
+                        || kind == INPUT_EVENT || kind == Program.JRO && x0 != x1) {
+                    return -1;
+                }
+                if (kind != OUTPUT_EVENT && kind != Program.JRO) {
+                    if (SiloStepper.jumps(kind, x0) != SiloStepper.jumps(kind, x1)) {
+                        return -1;
+                    }
+                    periods = Math.min(periods, sameJumpFor(kind, x0, (long) x1 - x0) - 1);
+                }
+            }
+            return Math.max(periods, 0);
+        }
+
+        /**
+         * Skips the given number of periods after the two recorded ones,
+         * writing the output values they would have written.
+         */
+        private void skip(long periods, Events first, Events second) {
+            boolean outputs = false;
+            for (int e = 0; e < first.size; e += 3) {
+                outputs |= first.entries[e] == OUTPUT_EVENT;
+            }
+            if (outputs) {
+                for (long k = 2; k < periods + 2; k++) {
+                    for (int e = 0; e < first.size; e += 3) {
+                        if (first.entries[e] == OUTPUT_EVENT) {
+                            int x0 = first.entries[e + 2];
+                            silos.emit(first.entries[e + 1], x0 + (int) k * (second.entries[e + 2] - x0));
+                        }
+                    }
+                }
+            }
+            int times = (int) periods;
+            for (int a = 0; a < active.length; a++) {
+                int s = active[a];
+                acc[s] += times * (values[2][a * 6] - values[1][a * 6]);
+                bak[s] += times * (values[2][a * 6 + 1] - values[1][a * 6 + 1]);
+                for (int port = 0; port < 4; port++) {
+                    cellValue[s * 4 + port] += times * (values[2][a * 6 + 2 + port] - values[1][a * 6 + 2 + port]);
+                }
+            }
+            cycle += periods * period;
+            skippedCycles += periods * period;
+        }
+    }
+
+    /**
+     * Returns the largest k for which a conditional jump with ACC x + i *
+     * delta goes the same way for every i from 0 to k, with ACC still an
+     * int that has not wrapped around.
+     */
+    static long sameJumpFor(int op, long x, long delta) {
+        if (delta == 0) {
+            return Long.MAX_VALUE;
+        }
+        long range = delta > 0 ? (Integer.MAX_VALUE - x) / delta : (x - Integer.MIN_VALUE) / -delta;
+        long same = switch (op) {
+            case Program.JEZ, Program.JNZ -> x == 0 ? 0 : x % delta == 0 && -x / delta > 0 ? -x / delta - 1 : range;
+            case Program.JGZ -> x > 0 ? (delta > 0 ? range : (x - 1) / -delta) : (delta < 0 ? range : -x / delta);
+            default -> x < 0 ? (delta < 0 ? range : (-1 - x) / delta) : (delta > 0 ? range : x / -delta);
+        };
+        return Math.min(range, same);
+    }
+
+    /**
+     * The getCycle method returns the number of cycles executed so far.
+     */
+    public long getCycle() {
+        return cycle;
+    }
+
+    /**
+     * The getOutputValues method returns the values written to an output
+     * stream, in the order the streams were added.
+     */
+    public int[] getOutputValues(int index) {
+        return silos.outputStreams.get(index).toArray();
+    }
+
+    /**
+     * Returns how many values have been written to an output stream,
+     * including those that went to its sink.
+     */
+    public long getOutputCount(int index) {
+        return silos.outputCounts[index];
+    }
+
+    public int getNumOutputStreams() {
+        return silos.outputStreams.size();
+    }
+
+    /**
+     * The getAcc, getBak and getInstructionIndex methods return the
+     * register values of the silo at the given row and column.
+     */
+    public int getAcc(int row, int col) {
+        return acc[row * numCols + col];
+    }
+
+    public int getBak(int row, int col) {
+        return bak[row * numCols + col];
+    }
+
+    public int getInstructionIndex(int row, int col) {
+        return pc[row * numCols + col];
+    }
+}
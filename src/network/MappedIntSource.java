@@ -0,0 +1,79 @@
+package network;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The MappedIntSource reads raw little-endian int32 values from a file by
+ * memory mapping it. A single mapping is limited to 2 GB, so the file is
+ * mapped one window at a time and the next window is only mapped once the
+ * previous one has been consumed. The operating system pages the data in
+ * and out as needed, none of it is copied onto the heap beforehand.
+ */
+public final class MappedIntSource implements IntSource {
+    private static final long WINDOW_BYTES = 64L << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private long position;
+    private IntBuffer window = IntBuffer.allocate(0);
+
+    /**
+     * Opens the file and checks that it holds a whole number of values.
+     */
+    public MappedIntSource(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+        if (size % Integer.BYTES != 0) {
+            channel.close();
+            throw new IllegalArgumentException("Binary stream file " + path
+                    + " has a size that is not a multiple of 4 bytes");
+        }
+    }
+
+    @Override
+    public int read(int[] buffer, int offset, int length) throws IOException {
+        if (!window.hasRemaining()) {
+            if (position >= size) {
+                return -1;
+            }
+            long bytes = Math.min(WINDOW_BYTES, size - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asIntBuffer();
+            position += bytes;
+        }
+        int count = Math.min(length, window.remaining());
+        window.get(buffer, offset, count);
+        return count;
+    }
+
+    /**
+     * Skips values by moving the file position, without reading them.
+     */
+    @Override
+    public long skip(long count) {
+        long inWindow = Math.min(count, window.remaining());
+        window.position(window.position() + (int) inWindow);
+        long bytes = Math.min((count - inWindow) * Integer.BYTES, size - position);
+        position += bytes;
+        return inWindow + bytes / Integer.BYTES;
+    }
+
+    @Override
+    public void rewind() {
+        position = 0;
+        window = IntBuffer.allocate(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
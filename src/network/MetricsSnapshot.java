@@ -0,0 +1,202 @@
+package network;
+
+import java.util.Arrays;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * A MetricsSnapshot holds the counters of every silo and stream of a
+ * SiloNetwork at one moment, see SiloNetwork.snapshotMetrics. Per silo
+ * values are stored row by row. Rates such as values per second are
+ * computed between two snapshots.
+ */
+public final class MetricsSnapshot {
+    private final long timeNanos;
+    private final int numRows;
+    private final int numCols;
+    private final long cycles;
+    private final long[] instructions;
+    private final long[] siloCycles;
+    private final long[] readStallCycles;
+    private final long[] writeStallCycles;
+    private final long[] readWaitNanos;
+    private final long[] writeWaitNanos;
+    private final long[] barrierWaitNanos;
+    private final long[] inputValues;
+    private final long[] outputValues;
+
+    /**
+     * Reads the counters of every silo and stream of a network.
+     */
+    MetricsSnapshot(SiloNetwork network, int numRows, int numCols) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        int numSilos = numRows * numCols;
+        instructions = new long[numSilos];
+        siloCycles = new long[numSilos];
+        readStallCycles = new long[numSilos];
+        writeStallCycles = new long[numSilos];
+        readWaitNanos = new long[numSilos];
+        writeWaitNanos = new long[numSilos];
+        barrierWaitNanos = new long[numSilos];
+        for (int i = 0; i < numSilos; i++) {
+            SiloState silo = network.getSilo(i / numCols, i % numCols);
+            if (silo != null) {
+                SiloMetrics metrics = silo.getMetrics();
+                instructions[i] = metrics.getInstructions();
+                siloCycles[i] = metrics.getCycles();
+                readStallCycles[i] = metrics.getReadStallCycles();
+                writeStallCycles[i] = metrics.getWriteStallCycles();
+                readWaitNanos[i] = metrics.getReadWaitNanos();
+                writeWaitNanos[i] = metrics.getWriteWaitNanos();
+                barrierWaitNanos[i] = metrics.getBarrierWaitNanos();
+            }
+        }
+
+        inputValues = new long[network.getInputStreams().size()];
+        for (int i = 0; i < inputValues.length; i++) {
+            inputValues[i] = network.getInputStreams().get(i).getCurrentIndex();
+        }
+        outputValues = new long[network.getOutputStreams().size()];
+        for (int i = 0; i < outputValues.length; i++) {
+            outputValues[i] = network.getOutputStreams().get(i).size();
+        }
+        cycles = network.getClock().getTickCount();
+        timeNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the System.nanoTime at which the snapshot was taken.
+     */
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * Returns the number of cycles the network has completed.
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * The per silo getters return the counters of the silo at the given
+     * row and column, see SiloMetrics.
+     */
+    public long getInstructions(int row, int col) {
+        return instructions[row * numCols + col];
+    }
+
+    public long getSiloCycles(int row, int col) {
+        return siloCycles[row * numCols + col];
+    }
+
+    public long getReadStallCycles(int row, int col) {
+        return readStallCycles[row * numCols + col];
+    }
+
+    public long getWriteStallCycles(int row, int col) {
+        return writeStallCycles[row * numCols + col];
+    }
+
+    public long getReadWaitNanos(int row, int col) {
+        return readWaitNanos[row * numCols + col];
+    }
+
+    public long getWriteWaitNanos(int row, int col) {
+        return writeWaitNanos[row * numCols + col];
+    }
+
+    public long getBarrierWaitNanos(int row, int col) {
+        return barrierWaitNanos[row * numCols + col];
+    }
+
+    /**
+     * The getAll methods return a per silo counter for every silo, row by
+     * row.
+     */
+    public long[] getAllInstructions() {
+        return instructions.clone();
+    }
+
+    public long[] getAllReadStallCycles() {
+        return readStallCycles.clone();
+    }
+
+    public long[] getAllWriteStallCycles() {
+        return writeStallCycles.clone();
+    }
+
+    public long[] getAllBarrierWaitNanos() {
+        return barrierWaitNanos.clone();
+    }
+
+    /**
+     * The getTotal methods add a per silo counter up over all silos.
+     */
+    public long getTotalInstructions() {
+        return Arrays.stream(instructions).sum();
+    }
+
+    public long getTotalReadStallCycles() {
+        return Arrays.stream(readStallCycles).sum();
+    }
+
+    public long getTotalWriteStallCycles() {
+        return Arrays.stream(writeStallCycles).sum();
+    }
+
+    public long getTotalReadWaitNanos() {
+        return Arrays.stream(readWaitNanos).sum();
+    }
+
+    public long getTotalWriteWaitNanos() {
+        return Arrays.stream(writeWaitNanos).sum();
+    }
+
+    public long getTotalBarrierWaitNanos() {
+        return Arrays.stream(barrierWaitNanos).sum();
+    }
+
+    /**
+     * The getInputValues and getOutputValues methods return how many values
+     * have been taken from an input stream and written to an output stream,
+     * in the order the network lists its streams.
+     */
+    public long getInputValues(int stream) {
+        return inputValues[stream];
+    }
+
+    public long getOutputValues(int stream) {
+        return outputValues[stream];
+    }
+
+    /**
+     * The inputValuesPerSecond and outputValuesPerSecond methods return the
+     * rate of every stream between an earlier snapshot and this one.
+     */
+    public double[] inputValuesPerSecond(MetricsSnapshot earlier) {
+        return rates(inputValues, earlier.inputValues, earlier.timeNanos);
+    }
+
+    public double[] outputValuesPerSecond(MetricsSnapshot earlier) {
+        return rates(outputValues, earlier.outputValues, earlier.timeNanos);
+    }
+
+    private double[] rates(long[] now, long[] before, long beforeNanos) {
+        double seconds = (timeNanos - beforeNanos) / 1e9;
+        double[] rates = new double[now.length];
+        for (int i = 0; i < rates.length && i < before.length; i++) {
+            rates[i] = seconds > 0 ? (now[i] - before[i]) / seconds : 0;
+        }
+        return rates;
+    }
+}
@@ -0,0 +1,119 @@
+package network;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The NetworkMetrics class implements the JMX view of a SiloNetwork. Every
+ * attribute takes a fresh MetricsSnapshot, so nothing is counted on behalf
+ * of JMX while no one is looking. Rates are measured against the snapshot
+ * taken the last time a rate was read.
+ */
+final class NetworkMetrics implements NetworkMetricsMXBean {
+    private final SiloNetwork network;
+    // The grid never changes size, so its dimensions are read only once
+    private final int numRows;
+    private final int numCols;
+    private MetricsSnapshot lastCyclesSample;
+    private MetricsSnapshot lastInputSample;
+    private MetricsSnapshot lastOutputSample;
+
+    NetworkMetrics(SiloNetwork network) {
+        this.network = network;
+        MetricsSnapshot snapshot = network.snapshotMetrics();
+        numRows = snapshot.getNumRows();
+        numCols = snapshot.getNumCols();
+        lastCyclesSample = snapshot;
+        lastInputSample = snapshot;
+        lastOutputSample = snapshot;
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public int getNumCols() {
+        return numCols;
+    }
+
+    @Override
+    public long getCycles() {
+        return network.getClock().getTickCount();
+    }
+
+    @Override
+    public long getInstructionsRetired() {
+        return network.snapshotMetrics().getTotalInstructions();
+    }
+
+    @Override
+    public long getReadStallCycles() {
+        return network.snapshotMetrics().getTotalReadStallCycles();
+    }
+
+    @Override
+    public long getWriteStallCycles() {
+        return network.snapshotMetrics().getTotalWriteStallCycles();
+    }
+
+    @Override
+    public long getReadWaitNanos() {
+        return network.snapshotMetrics().getTotalReadWaitNanos();
+    }
+
+    @Override
+    public long getWriteWaitNanos() {
+        return network.snapshotMetrics().getTotalWriteWaitNanos();
+    }
+
+    @Override
+    public long getBarrierWaitNanos() {
+        return network.snapshotMetrics().getTotalBarrierWaitNanos();
+    }
+
+    @Override
+    public long[] getInstructionsPerSilo() {
+        return network.snapshotMetrics().getAllInstructions();
+    }
+
+    @Override
+    public long[] getReadStallCyclesPerSilo() {
+        return network.snapshotMetrics().getAllReadStallCycles();
+    }
+
+    @Override
+    public long[] getWriteStallCyclesPerSilo() {
+        return network.snapshotMetrics().getAllWriteStallCycles();
+    }
+
+    @Override
+    public long[] getBarrierWaitNanosPerSilo() {
+        return network.snapshotMetrics().getAllBarrierWaitNanos();
+    }
+
+    @Override
+    public synchronized double getCyclesPerSecond() {
+        MetricsSnapshot now = network.snapshotMetrics();
+        double seconds = (now.getTimeNanos() - lastCyclesSample.getTimeNanos()) / 1e9;
+        double rate = seconds > 0 ? (now.getCycles() - lastCyclesSample.getCycles()) / seconds : 0;
+        lastCyclesSample = now;
+        return rate;
+    }
+
+    @Override
+    public synchronized double[] getInputValuesPerSecond() {
+        MetricsSnapshot now = network.snapshotMetrics();
+        double[] rates = now.inputValuesPerSecond(lastInputSample);
+        lastInputSample = now;
+        return rates;
+    }
+
+    @Override
+    public synchronized double[] getOutputValuesPerSecond() {
+        MetricsSnapshot now = network.snapshotMetrics();
+        double[] rates = now.outputValuesPerSecond(lastOutputSample);
+        lastOutputSample = now;
+        return rates;
+    }
+}
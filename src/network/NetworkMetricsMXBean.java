@@ -0,0 +1,44 @@
+package network;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The management interface of a SiloNetwork, registered with JMX by
+ * SiloNetwork.registerMBean so tools such as JConsole can watch a running
+ * network. Totals are summed over all silos, the PerSilo attributes list
+ * every silo row by row. The rate attributes cover the time since they
+ * were last read.
+ */
+public interface NetworkMetricsMXBean {
+    int getNumRows();
+
+    int getNumCols();
+
+    long getCycles();
+
+    long getInstructionsRetired();
+
+    long getReadStallCycles();
+
+    long getWriteStallCycles();
+
+    long getReadWaitNanos();
+
+    long getWriteWaitNanos();
+
+    long getBarrierWaitNanos();
+
+    long[] getInstructionsPerSilo();
+
+    long[] getReadStallCyclesPerSilo();
+
+    long[] getWriteStallCyclesPerSilo();
+
+    long[] getBarrierWaitNanosPerSilo();
+
+    double getCyclesPerSecond();
+
+    double[] getInputValuesPerSecond();
+
+    double[] getOutputValuesPerSecond();
+}
@@ -1,118 +1,28 @@
 package network;
 
-import commands.*;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
  * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
  *
- * Parses an input file containing a string into a list of instruction objects,
- * grid dimensions, silo instructions, input streams, and output streams.
+ * Parses an input file into grid dimensions, silo instructions, input
+ * streams, and output streams, and compiles silo programs.
  */
 public class Parser {
-    private final Map<String, InstructionFactory> instructionFactories;
-
-    /**
-     * Creates a new parser and initializes the instructionFactories map,
-     * which maps instruction names to their corresponding factories.
-     */
-    public Parser() {
-        instructionFactories = new HashMap<>();
-        instructionFactories.put("NOOP", Noop::new);
-        instructionFactories.put("MOVE", tokens -> new Move(tokens[1], tokens[2]));
-        instructionFactories.put("SAVE", Save::new);
-        instructionFactories.put("SWAP", Swap::new);
-        instructionFactories.put("ADD", tokens -> new Add(tokens[1]));
-        instructionFactories.put("SUB", tokens -> new Sub(tokens[1]));
-        instructionFactories.put("NEGATE", Negate::new);
-        instructionFactories.put("JUMP", tokens -> new Jump(tokens[1]));
-        instructionFactories.put("JEZ", tokens -> new Jez(tokens[1]));
-        instructionFactories.put("JNZ", tokens -> new Jnz(tokens[1]));
-        instructionFactories.put("JGZ", tokens -> new Jgz(tokens[1]));
-        instructionFactories.put("JLZ", tokens -> new Jlz(tokens[1]));
-        instructionFactories.put("JRO", tokens -> new Jro(tokens[1]));
-    }
-
     /**
-     * The parse method accepts a program as a string and returns a list of Instruction objects.
-     * It first scans the program for labels, then creates the instructions, and finally substitutes
-     * label names with their corresponding instruction indices.
+     * The compile method turns a program into its compiled Program form,
+     * with every operand decoded and every label resolved to an absolute
+     * instruction index. Engines execute the compiled form directly, so
+     * no strings are looked at while a silo runs.
      *
-     * @param program the program to parse
-     * @return the list of instructions
-     */
-    public List<Instruction> parse(String program) {
-        List<Instruction> instructions = new ArrayList<>();
-        Map<String, Label> labels = new HashMap<>();
-        String[] lines = program.split("\n");
-
-        // Scan the program for labels
-        int instructionIndex = 0;
-        for (String line : lines) {
-            String[] tokens = line.split(" ");
-            String command = tokens[0];
-
-            if (command.startsWith(":") && command.endsWith(":")) {
-                // Found a label
-                String labelName = command.substring(1, command.length() - 1);
-                labels.put(labelName, new Label(instructionIndex));
-            } else {
-                // Found an instruction
-                instructionIndex++;
-            }
-        }
-
-        // Create instructions, substituting label names with their corresponding instruction indices
-        instructionIndex = 0;
-        for (String line : lines) {
-            String[] tokens = line.split(" ");
-            String command = tokens[0];
-
-            if (command.startsWith(":") && command.endsWith(":")) {
-                // Found a label, do nothing
-            } else {
-                // Found an instruction
-                if (instructionFactories.containsKey(command)) {
-                    InstructionFactory factory = instructionFactories.get(command);
-                    Instruction instruction = factory.create(substituteLabels(tokens, labels));
-                    instructions.add(instruction);
-                } else {
-                    //if the command is empty, do nothing
-                    if (command.equals("")) {
-                        continue;
-                    }
-                    throw new IllegalArgumentException("Unknown command: " + command);
-                }
-                instructionIndex++;
-            }
-        }
-        return instructions;
-    }
-
-    /**
-     * substituteLabels is a helper method that replaces label names
-     * in tokens with their corresponding instruction indices. It is
-     * used by InstructionFactory to track the instruction number.
+     * @param program the program to compile
+     * @return the compiled program
      */
-    private String[] substituteLabels(String[] tokens, Map<String, Label> labels) {
-        String[] substitutedTokens = new String[tokens.length];
-        for (int i = 0; i < tokens.length; i++) {
-            String token = tokens[i];
-            if (labels.containsKey(token)) {
-                substitutedTokens[i] = Integer.toString(labels.get(token).getInstructionIndex());
-            } else {
-                substitutedTokens[i] = token;
-            }
-        }
-        return substitutedTokens;
-    }
-
-    /**
-     * Creates Instruction objects from an array of tokens.
-     */
-    private interface InstructionFactory {
-        Instruction create(String[] tokens);
+    public Program compile(String program) {
+        return Program.compile(program);
     }
 
     /**
@@ -187,7 +97,15 @@ public class Parser {
                 int col = Integer.parseInt(coordinates[1]);
                 Stream input = new Stream(row, col, true);
                 while (!(line = reader.readLine()).equals("END")) {
-                    input.addValue(Integer.parseInt(line));
+                    if (line.startsWith("FILE ")) {
+                        // FILE <path> [BINARY] streams the rest of the values from a file
+                        String[] fileTokens = fileTokens(line);
+                        input.setSource(IntSource.open(resolve(filePath, fileTokens[1]), fileTokens.length == 3));
+                    } else if (input.getSource() != null) {
+                        throw new IllegalArgumentException("Values after FILE in input stream " + row + " " + col);
+                    } else {
+                        input.addValue(Integer.parseInt(line));
+                    }
                 }
                 inputStreams.add(input);
             } else if ("OUTPUT".equals(tokens[0])) {
@@ -196,7 +114,16 @@ public class Parser {
                 int col = Integer.parseInt(coordinates[1]);
                 Stream output = new Stream(row, col, false);
                 outputStreams.add(output);
-                reader.readLine(); // Read END line
+                while (!(line = reader.readLine()).equals("END")) {
+                    if (line.startsWith("FILE ") && output.getSink() == null) {
+                        // FILE <path> [BINARY] writes the values to a file
+                        String[] fileTokens = fileTokens(line);
+                        output.setSink(IntSink.open(resolve(filePath, fileTokens[1]), fileTokens.length == 3));
+                    } else {
+                        throw new IllegalArgumentException("Invalid line in output stream " + row + " " + col
+                                + ": " + line);
+                    }
+                }
             } else if ("END".equals(tokens[0])) {
                 siloInstructions.add(currentSilo.toString().trim());
                 currentSilo = new StringBuilder();
@@ -215,5 +142,27 @@ public class Parser {
         return new InputFileData(numRows, numCols, siloInstructions, inputStreams, outputStreams);
     }
 
+    /**
+     * fileTokens splits a FILE line of an input or output stream, which
+     * names a file of decimal values separated by whitespace, or of raw
+     * little-endian int32 values when the line ends with BINARY.
+     */
+    private String[] fileTokens(String line) {
+        String[] tokens = line.trim().split("\\s+");
+        boolean binary = tokens.length == 3 && "BINARY".equals(tokens[2]);
+        if (tokens.length < 2 || tokens.length > 3 || (tokens.length == 3 && !binary)) {
+            throw new IllegalArgumentException("Invalid input file line: " + line);
+        }
+        return tokens;
+    }
+
+    /**
+     * resolve turns the path of a stream file into a path relative to the
+     * directory of the program file.
+     */
+    private Path resolve(String programPath, String path) {
+        return Paths.get(programPath).toAbsolutePath().getParent().resolve(path);
+    }
+
 
 }
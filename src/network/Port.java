@@ -0,0 +1,63 @@
+package network;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The Port class holds the int ids of the four silo ports together with
+ * the lookup tables engines need to find the silo on the other side of a
+ * port. Using ints keeps port handling free of string compares.
+ */
+public final class Port {
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+    public static final int COUNT = 4;
+
+    private static final String[] NAMES = {"UP", "DOWN", "LEFT", "RIGHT"};
+    private static final int[] OPPOSITE = {DOWN, UP, RIGHT, LEFT};
+    private static final int[] ROW_OFFSET = {-1, 1, 0, 0};
+    private static final int[] COL_OFFSET = {0, 0, -1, 1};
+
+    private Port() {
+    }
+
+    /**
+     * Returns the port id for a port name, or -1 if the name is not a port.
+     */
+    public static int fromName(String name) {
+        return switch (name) {
+            case "UP" -> UP;
+            case "DOWN" -> DOWN;
+            case "LEFT" -> LEFT;
+            case "RIGHT" -> RIGHT;
+            default -> -1;
+        };
+    }
+
+    /**
+     * Returns the name of a port, as it is written in silo programs.
+     */
+    public static String name(int port) {
+        return NAMES[port];
+    }
+
+    /**
+     * Returns the port a neighbour uses to talk back through the given port.
+     */
+    public static int opposite(int port) {
+        return OPPOSITE[port];
+    }
+
+    /**
+     * The rowOffset and colOffset methods return the grid offset of the
+     * neighbour on the other side of a port.
+     */
+    public static int rowOffset(int port) {
+        return ROW_OFFSET[port];
+    }
+
+    public static int colOffset(int port) {
+        return COL_OFFSET[port];
+    }
+}
@@ -0,0 +1,69 @@
+package network;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * PortWaits counts the silos of a SiloNetwork that have given up spinning
+ * on a port and are about to park, in a Grid cell or an input Stream. When
+ * the last silo that runs parks as well, no silo is left to hand anyone a
+ * value, unless one of them is only about to notice its own, so the
+ * network checks for a Deadlock in that silo's thread. Silos leaving a
+ * wait are counted too, which tells the check whether any silo moved while
+ * it looked at them. Both counters are only touched right before a silo
+ * parks and after it wakes, so they cost nothing on the fast path.
+ */
+final class PortWaits {
+    // For a Grid or Stream used outside of a network, counts nothing
+    static final PortWaits NONE = new PortWaits(null);
+
+    private final Runnable check;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong ended = new AtomicLong();
+    private volatile int silos = Integer.MAX_VALUE;
+
+    PortWaits(Runnable check) {
+        this.check = check;
+    }
+
+    /**
+     * Sets the number of silos that run, so the check happens once all of
+     * them wait.
+     */
+    void setSilos(int silos) {
+        this.silos = silos;
+    }
+
+    /**
+     * Called by a silo that is about to park on a port. The silo that
+     * makes all of them wait runs the check before it parks.
+     */
+    void started() {
+        if (check != null && waiting.incrementAndGet() >= silos) {
+            check.run();
+        }
+    }
+
+    /**
+     * Called by a silo that stops waiting, before it does anything else.
+     */
+    void ended() {
+        if (check != null) {
+            ended.incrementAndGet();
+            waiting.decrementAndGet();
+        }
+    }
+
+    boolean allWaiting() {
+        return waiting.get() >= silos;
+    }
+
+    /**
+     * Returns how many waits have ended so far.
+     */
+    long getEnded() {
+        return ended.get();
+    }
+}
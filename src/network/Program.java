@@ -0,0 +1,264 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * A Program is the compiled form of a silo's source code. Every instruction
+ * is stored as an int opcode with its operands already resolved: operand
+ * kinds, literal values, register ids, port ids and absolute jump targets.
+ * An engine can execute it without looking at any strings. Operands are
+ * kept in parallel arrays indexed by instruction index. Programs are
+ * immutable once compiled.
+ */
+public final class Program {
+    static final int NOOP = 0;
+    static final int MOVE = 1;
+    static final int SWAP = 2;
+    static final int SAVE = 3;
+    static final int ADD = 4;
+    static final int SUB = 5;
+    static final int NEGATE = 6;
+    static final int JUMP = 7;
+    static final int JEZ = 8;
+    static final int JNZ = 9;
+    static final int JGZ = 10;
+    static final int JLZ = 11;
+    static final int JRO = 12;
+    // Superinstructions made by the ProgramOptimizer, never by compile. They
+    // move the source operand into ACC and then add or subtract the register
+    // or literal held in the destination operand.
+    static final int MOVE_ADD = 13;
+    static final int MOVE_SUB = 14;
+
+    // Operand kinds. For PORT operands the operand value is the port id.
+    static final int LITERAL = 0;
+    static final int ACC = 1;
+    static final int BAK = 2;
+    static final int NIL = 3;
+    static final int PORT = 4;
+
+    final int[] op;
+    final int[] srcKind;
+    final int[] src;
+    final int[] dstKind;
+    final int[] dst;
+    // Cycles an instruction accounts for when it falls through and when its
+    // jump is taken. Always 1 unless the ProgramOptimizer merged instructions
+    // in its cycle accurate mode.
+    final int[] cost;
+    final int[] jumpCost;
+    // Whether an instruction neither reads from nor writes to a port, so a
+    // threaded silo can execute it ahead of the others, see RunAheadSchedule
+    final boolean[] portFree;
+    final int length;
+
+    private Program(int[] op, int[] srcKind, int[] src, int[] dstKind, int[] dst) {
+        this(op, srcKind, src, dstKind, dst, ones(op.length), ones(op.length));
+    }
+
+    Program(int[] op, int[] srcKind, int[] src, int[] dstKind, int[] dst, int[] cost, int[] jumpCost) {
+        this.op = op;
+        this.srcKind = srcKind;
+        this.src = src;
+        this.dstKind = dstKind;
+        this.dst = dst;
+        this.cost = cost;
+        this.jumpCost = jumpCost;
+        this.length = op.length;
+        portFree = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            portFree[i] = srcKind[i] != PORT && dstKind[i] != PORT;
+        }
+    }
+
+    private static int[] ones(int length) {
+        int[] ones = new int[length];
+        Arrays.fill(ones, 1);
+        return ones;
+    }
+
+    /**
+     * The size method returns the number of instructions in the program.
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * The isIdleFrom method returns whether a silo starting at the given
+     * instruction can never use a port or change a register: every
+     * instruction it can reach is a NOOP or a jump. Such a silo looks the
+     * same on every cycle and can never hand a value to another silo, so
+     * engines leave it out of their cycles.
+     */
+    boolean isIdleFrom(int start) {
+        if (length == 0) {
+            return true;
+        }
+        boolean[] seen = new boolean[length];
+        int[] pending = new int[length];
+        int count = 0;
+        seen[start] = true;
+        pending[count++] = start;
+        while (count > 0) {
+            int i = pending[--count];
+            int next = i + 1 >= length ? 0 : i + 1;
+            switch (op[i]) {
+                case NOOP -> count = visit(next, seen, pending, count);
+                case JUMP -> count = visit(src[i], seen, pending, count);
+                case JEZ, JNZ, JGZ, JLZ -> {
+                    count = visit(src[i], seen, pending, count);
+                    count = visit(next, seen, pending, count);
+                }
+                case JRO -> {
+                    if (srcKind[i] == PORT) {
+                        return false;
+                    } else if (srcKind[i] == LITERAL) {
+                        count = visit(Math.floorMod(i + src[i], length), seen, pending, count);
+                    } else {
+                        // A register offset can be anything, so any instruction may follow
+                        for (int target = 0; target < length; target++) {
+                            count = visit(target, seen, pending, count);
+                        }
+                    }
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int visit(int index, boolean[] seen, int[] pending, int count) {
+        if (!seen[index]) {
+            seen[index] = true;
+            pending[count++] = index;
+        }
+        return count;
+    }
+
+    /**
+     * The compile method decodes a program, one instruction per line with
+     * its operands separated by single spaces. A line ":NAME:" defines a
+     * label, which stands for the index of the next instruction in any
+     * operand. Jump targets are absolute instruction indices, wrapping to 0
+     * when a label sits at the end of the program. Register names are
+     * matched in any case.
+     */
+    static Program compile(String program) {
+        String[] lines = program.split("\n");
+        Map<String, Integer> labels = new HashMap<>();
+        List<String[]> instructions = new ArrayList<>();
+
+        for (String line : lines) {
+            String[] tokens = line.split(" ");
+            String command = tokens[0];
+            if (command.startsWith(":") && command.endsWith(":")) {
+                labels.put(command.substring(1, command.length() - 1), instructions.size());
+            } else if (!command.isEmpty()) {
+                instructions.add(tokens);
+            }
+        }
+
+        int n = instructions.size();
+        int[] op = new int[n];
+        int[] srcKind = new int[n];
+        int[] src = new int[n];
+        int[] dstKind = new int[n];
+        int[] dst = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            String[] tokens = substituteLabels(instructions.get(i), labels);
+            switch (tokens[0]) {
+                case "NOOP" -> op[i] = NOOP;
+                case "SWAP" -> op[i] = SWAP;
+                case "SAVE" -> op[i] = SAVE;
+                case "NEGATE" -> op[i] = NEGATE;
+                case "MOVE" -> {
+                    op[i] = MOVE;
+                    srcKind[i] = operandKind(operand(tokens, 1));
+                    src[i] = operandValue(operand(tokens, 1), srcKind[i]);
+                    dstKind[i] = operandKind(operand(tokens, 2));
+                    dst[i] = operandValue(operand(tokens, 2), dstKind[i]);
+                    if (dstKind[i] == LITERAL) {
+                        throw new IllegalArgumentException("Invalid destination: " + tokens[2]);
+                    }
+                }
+                case "ADD", "SUB", "JRO" -> {
+                    op[i] = tokens[0].equals("ADD") ? ADD : tokens[0].equals("SUB") ? SUB : JRO;
+                    srcKind[i] = operandKind(operand(tokens, 1));
+                    src[i] = operandValue(operand(tokens, 1), srcKind[i]);
+                }
+                case "JUMP", "JEZ", "JNZ", "JGZ", "JLZ" -> {
+                    op[i] = switch (tokens[0]) {
+                        case "JUMP" -> JUMP;
+                        case "JEZ" -> JEZ;
+                        case "JNZ" -> JNZ;
+                        case "JGZ" -> JGZ;
+                        default -> JLZ;
+                    };
+                    int target = parseLiteral(operand(tokens, 1));
+                    src[i] = target >= n ? 0 : target;
+                }
+                default -> throw new IllegalArgumentException("Unknown command: " + tokens[0]);
+            }
+        }
+        return new Program(op, srcKind, src, dstKind, dst);
+    }
+
+    /**
+     * Replaces the operands that name a label with the index of its
+     * instruction.
+     */
+    private static String[] substituteLabels(String[] tokens, Map<String, Integer> labels) {
+        String[] substituted = tokens.clone();
+        for (int i = 1; i < substituted.length; i++) {
+            Integer index = labels.get(substituted[i]);
+            if (index != null) {
+                substituted[i] = Integer.toString(index);
+            }
+        }
+        return substituted;
+    }
+
+    private static String operand(String[] tokens, int index) {
+        if (index >= tokens.length || tokens[index].isEmpty()) {
+            throw new IllegalArgumentException("Missing operand for " + tokens[0]);
+        }
+        return tokens[index];
+    }
+
+    private static int operandKind(String token) {
+        if (token.equalsIgnoreCase("ACC")) {
+            return ACC;
+        } else if (token.equalsIgnoreCase("BAK")) {
+            return BAK;
+        } else if (token.equalsIgnoreCase("NIL")) {
+            return NIL;
+        }
+        return Port.fromName(token) >= 0 ? PORT : LITERAL;
+    }
+
+    private static int operandValue(String token, int kind) {
+        return switch (kind) {
+            case LITERAL -> parseLiteral(token);
+            case PORT -> Port.fromName(token);
+            default -> 0;
+        };
+    }
+
+    private static int parseLiteral(String token) {
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid operand: " + token);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package network;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The ProgramCache compiles every distinct program text once. Programs are
+ * immutable, so all silos with the same code share one Program, and a
+ * silo that is stopped and started again with unchanged code gets the
+ * Program it had before. Loading a large grid made of a few programs
+ * repeated over and over then compiles and keeps only those few.
+ *
+ * The Programs are only held weakly, see WeakValueMap. Once no silo or
+ * engine uses a Program any more, for instance because its code was
+ * edited, it is dropped from the cache, and with it the class compiled
+ * for it by the ProgramCompiler.
+ *
+ * A SiloNetwork keeps one for its silos for as long as it lives, and the
+ * headless engines use one while they load their programs.
+ */
+public final class ProgramCache {
+    private final WeakValueMap<String, Program> programs = new WeakValueMap<>();
+
+    /**
+     * The get method returns the compiled Program of the given code,
+     * compiling it if no silo uses a Program for it yet.
+     * @throws IllegalArgumentException if the code does not compile
+     */
+    public Program get(String code) {
+        return programs.get(code, Program::compile);
+    }
+
+    /**
+     * Returns the number of distinct programs in use.
+     */
+    public int size() {
+        return programs.size();
+    }
+}
@@ -0,0 +1,19 @@
+package network;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * A ProgramCode is a Program compiled to JVM bytecode by the
+ * ProgramCompiler. It executes single instructions on a silo exactly like
+ * the Interpreter does, with the opcodes and operands of every instruction
+ * built into the code instead of looked up in the Program's arrays.
+ */
+public interface ProgramCode {
+
+    /**
+     * Executes the instruction at the given index on the silo and returns
+     * the index of the instruction to execute next.
+     * @throws InterruptedException if a write to a port is interrupted
+     */
+    int execute(int index, SiloState silo) throws InterruptedException;
+}
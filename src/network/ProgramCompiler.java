@@ -0,0 +1,566 @@
+package network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The ProgramCompiler turns hot silo programs into JVM bytecode. Every
+ * distinct Program gets one hidden class, defined with
+ * MethodHandles.Lookup.defineHiddenClass, whose execute method is a
+ * tableswitch over the instruction index with one case per instruction.
+ * Each case calls the SiloState methods the Interpreter would call, with
+ * the operands as constants, and conditional jumps become branches, so
+ * HotSpot can inline the whole instruction. Registers stay in SiloState,
+ * where the GUI, the metrics and checkpoints read them.
+ *
+ * An Interpreter counts the instructions it executes and asks for the
+ * compiled code once its silo has executed the threshold number of them,
+ * so silos that hardly ever run stay interpreted. Silos running the same
+ * program share its class. The compiler only holds the compiled code
+ * weakly, and the hidden classes are not defined strongly, so once no
+ * silo runs a program any more its class can be unloaded. A silo that
+ * starts that program again later gets a new class.
+ */
+public final class ProgramCompiler {
+    public static final long DEFAULT_THRESHOLD = 10_000;
+
+    private static final String CLASS_NAME = "network/CompiledProgram";
+    private static final String SILO = "network/SiloState";
+    // Programs too long for a single method fall back to the Interpreter
+    private static final int MAX_INSTRUCTIONS = 2048;
+
+    private final long threshold;
+    private final WeakValueMap<ProgramKey, ProgramCode> compiled = new WeakValueMap<>();
+
+    /**
+     * Creates a compiler for silos that have executed the given number of
+     * instructions, 0 to compile every program as soon as it runs.
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public ProgramCompiler(long threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Invalid compile threshold: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the number of distinct programs whose compiled code has not
+     * been collected yet.
+     */
+    public int getCompiledCount() {
+        return compiled.size();
+    }
+
+    /**
+     * The compile method returns the compiled code of a program, defining
+     * its class if no silo uses compiled code for it yet. It returns null for a
+     * program too long to compile, which then keeps being interpreted.
+     * @throws IllegalArgumentException if the program contains an
+     * instruction only the headless engines run
+     */
+    public ProgramCode compile(Program program) {
+        if (program.length == 0 || program.length > MAX_INSTRUCTIONS) {
+            return null;
+        }
+        return compiled.get(new ProgramKey(program), key -> define(generate(key.program)));
+    }
+
+    private static ProgramCode define(byte[] bytes) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (ProgramCode) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not define compiled program", e);
+        }
+    }
+
+    /**
+     * Identifies a Program by its instructions, so silos with the same
+     * code share a compiled class.
+     */
+    private static final class ProgramKey {
+        private final Program program;
+        private final int hash;
+
+        ProgramKey(Program program) {
+            this.program = program;
+            int h = Arrays.hashCode(program.op);
+            h = 31 * h + Arrays.hashCode(program.srcKind);
+            h = 31 * h + Arrays.hashCode(program.src);
+            h = 31 * h + Arrays.hashCode(program.dstKind);
+            hash = 31 * h + Arrays.hashCode(program.dst);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ProgramKey key)) {
+                return false;
+            }
+            Program p = key.program;
+            return hash == key.hash && Arrays.equals(program.op, p.op) && Arrays.equals(program.srcKind, p.srcKind)
+                    && Arrays.equals(program.src, p.src) && Arrays.equals(program.dstKind, p.dstKind)
+                    && Arrays.equals(program.dst, p.dst);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // Opcodes of the JVM instructions the generated code uses
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD_1 = 0x1b;
+    private static final int ILOAD_3 = 0x1d;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int ISTORE_3 = 0x3e;
+    private static final int DUP = 0x59;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int INEG = 0x74;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGT = 0x9d;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int NEW = 0xbb;
+    private static final int ATHROW = 0xbf;
+
+    /**
+     * Generates the class file of a compiled program. The execute method
+     * keeps index in local 1, the silo in local 2 and an operand value in
+     * local 3, and every branch target starts with an empty stack and only
+     * the parameters defined, so each one gets the same stack map frame.
+     */
+    static byte[] generate(Program program) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int objectClass = pool.classRef("java/lang/Object");
+        int codeInterface = pool.classRef("network/ProgramCode");
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int exceptionClass = pool.classRef("java/lang/IllegalArgumentException");
+        int exceptionInit = pool.methodRef("java/lang/IllegalArgumentException", "<init>", "()V");
+
+        CodeBuffer code = new CodeBuffer();
+        int n = program.length;
+        code.op(ILOAD_1);
+        int switchStart = code.size();
+        code.op(TABLESWITCH);
+        while (code.size() % 4 != 0) {
+            code.op(0);
+        }
+        int defaultSlot = code.size();
+        code.u4(0);
+        code.u4(0);
+        code.u4(n - 1);
+        int firstCaseSlot = code.size();
+        for (int i = 0; i < n; i++) {
+            code.u4(0);
+        }
+
+        for (int i = 0; i < n; i++) {
+            code.patch4(firstCaseSlot + 4 * i, code.frame() - switchStart);
+            int next = i + 1 >= n ? 0 : i + 1;
+            switch (program.op[i]) {
+                case Program.NOOP -> {
+                    code.op(ALOAD_2);
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "noopMethod", "()V"));
+                    code.returnInt(pool, next);
+                }
+                case Program.MOVE -> {
+                    loadOperand(code, pool, program.srcKind[i], program.src[i]);
+                    code.op(ISTORE_3);
+                    code.op(ALOAD_2);
+                    if (program.dstKind[i] == Program.PORT) {
+                        code.pushInt(pool, program.dst[i]);
+                        code.op(ILOAD_3);
+                        code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "writeToPort", "(II)V"));
+                    } else {
+                        code.pushInt(pool, program.dstKind[i]);
+                        code.op(ILOAD_3);
+                        code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "setRegisterValue", "(II)V"));
+                    }
+                    code.returnInt(pool, next);
+                }
+                case Program.SWAP -> {
+                    code.op(ALOAD_2);
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "getAcc", "()I"));
+                    code.op(ISTORE_3);
+                    code.op(ALOAD_2);
+                    code.op(ALOAD_2);
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "getBak", "()I"));
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "setAcc", "(I)V"));
+                    code.op(ALOAD_2);
+                    code.op(ILOAD_3);
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "setBak", "(I)V"));
+                    code.returnInt(pool, next);
+                }
+                case Program.SAVE -> {
+                    code.op(ALOAD_2);
+                    code.op(ALOAD_2);
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "getAcc", "()I"));
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "setBak", "(I)V"));
+                    code.returnInt(pool, next);
+                }
+                case Program.ADD, Program.SUB -> {
+                    loadOperand(code, pool, program.srcKind[i], program.src[i]);
+                    code.op(ISTORE_3);
+                    code.op(ALOAD_2);
+                    code.op(ALOAD_2);
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "getAcc", "()I"));
+                    code.op(ILOAD_3);
+                    code.op(program.op[i] == Program.ADD ? IADD : ISUB);
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "setAcc", "(I)V"));
+                    code.returnInt(pool, next);
+                }
+                case Program.NEGATE -> {
+                    code.op(ALOAD_2);
+                    code.op(ALOAD_2);
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "getAcc", "()I"));
+                    code.op(INEG);
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "setAcc", "(I)V"));
+                    code.returnInt(pool, next);
+                }
+                case Program.JUMP -> code.returnInt(pool, program.src[i]);
+                case Program.JEZ, Program.JNZ, Program.JGZ, Program.JLZ -> {
+                    code.op(ALOAD_2);
+                    code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "getAcc", "()I"));
+                    int branch = code.size();
+                    code.op(switch (program.op[i]) {
+                        case Program.JEZ -> IFEQ;
+                        case Program.JNZ -> IFNE;
+                        case Program.JGZ -> IFGT;
+                        default -> IFLT;
+                    });
+                    code.u2(0);
+                    code.returnInt(pool, next);
+                    code.patch2(branch + 1, code.frame() - branch);
+                    code.returnInt(pool, program.src[i]);
+                }
+                case Program.JRO -> {
+                    code.op(ILOAD_1);
+                    loadOperand(code, pool, program.srcKind[i], program.src[i]);
+                    code.op(IADD);
+                    code.pushInt(pool, n);
+                    code.invoke(INVOKESTATIC, pool.methodRef("java/lang/Math", "floorMod", "(II)I"));
+                    code.op(IRETURN);
+                }
+                default -> throw new IllegalArgumentException("Cannot compile opcode " + program.op[i]);
+            }
+        }
+        code.patch4(defaultSlot, code.frame() - switchStart);
+        code.op(NEW);
+        code.u2(exceptionClass);
+        code.op(DUP);
+        code.invoke(INVOKESPECIAL, exceptionInit);
+        code.op(ATHROW);
+        if (code.size() > 65535) {
+            throw new IllegalArgumentException("Program too long to compile");
+        }
+
+        int initName = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int executeName = pool.utf8("execute");
+        int executeType = pool.utf8("(IL" + SILO + ";)I");
+        int codeName = pool.utf8("Code");
+        int frameTableName = pool.utf8("StackMapTable");
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            // Java 17 class files
+            out.writeShort(61);
+            pool.write(out);
+            // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+            out.writeShort(0x0031);
+            out.writeShort(thisClass);
+            out.writeShort(objectClass);
+            out.writeShort(1);
+            out.writeShort(codeInterface);
+            out.writeShort(0);
+            out.writeShort(2);
+
+            byte[] init = {(byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit,
+                    (byte) RETURN};
+            out.writeShort(0x0001);
+            out.writeShort(initName);
+            out.writeShort(initType);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + init.length);
+            out.writeShort(1);
+            out.writeShort(1);
+            out.writeInt(init.length);
+            out.write(init);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            byte[] frames = code.frames();
+            out.writeShort(0x0001);
+            out.writeShort(executeName);
+            out.writeShort(executeType);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + code.size() + 8 + frames.length);
+            out.writeShort(4);
+            out.writeShort(4);
+            out.writeInt(code.size());
+            out.write(code.bytes(), 0, code.size());
+            out.writeShort(0);
+            out.writeShort(1);
+            out.writeShort(frameTableName);
+            out.writeInt(2 + frames.length);
+            out.writeShort(code.frameCount());
+            out.write(frames);
+
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Pushes the value of a source operand, reading from the port for a
+     * PORT operand.
+     */
+    private static void loadOperand(CodeBuffer code, ConstantPool pool, int kind, int operand) {
+        switch (kind) {
+            case Program.LITERAL -> code.pushInt(pool, operand);
+            case Program.ACC -> {
+                code.op(ALOAD_2);
+                code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "getAcc", "()I"));
+            }
+            case Program.BAK -> {
+                code.op(ALOAD_2);
+                code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "getBak", "()I"));
+            }
+            case Program.NIL -> code.op(ICONST_0);
+            default -> {
+                code.op(ALOAD_2);
+                code.pushInt(pool, operand);
+                code.invoke(INVOKEVIRTUAL, pool.methodRef(SILO, "readFromPort", "(I)I"));
+            }
+        }
+    }
+
+    /**
+     * The bytecode of a method being generated, along with the offsets
+     * of its branch targets.
+     */
+    private static final class CodeBuffer {
+        private byte[] bytes = new byte[256];
+        private int size;
+        private final List<Integer> frameOffsets = new ArrayList<>();
+
+        void op(int op) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) op;
+        }
+
+        void u2(int value) {
+            op(value >> 8);
+            op(value);
+        }
+
+        void u4(int value) {
+            u2(value >> 16);
+            u2(value);
+        }
+
+        void patch2(int offset, int value) {
+            bytes[offset] = (byte) (value >> 8);
+            bytes[offset + 1] = (byte) value;
+        }
+
+        void patch4(int offset, int value) {
+            patch2(offset, value >> 16);
+            patch2(offset + 2, value);
+        }
+
+        void invoke(int op, int method) {
+            op(op);
+            u2(method);
+        }
+
+        void pushInt(ConstantPool pool, int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                op(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value);
+            } else {
+                op(LDC_W);
+                u2(pool.integer(value));
+            }
+        }
+
+        void returnInt(ConstantPool pool, int value) {
+            pushInt(pool, value);
+            op(IRETURN);
+        }
+
+        /**
+         * Marks the current offset as a branch target and returns it.
+         */
+        int frame() {
+            frameOffsets.add(size);
+            return size;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        int frameCount() {
+            return frameOffsets.size();
+        }
+
+        /**
+         * Returns the entries of the StackMapTable, all of them the same
+         * frame as at the start of the method.
+         */
+        byte[] frames() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int previous = -1;
+            for (int offset : frameOffsets) {
+                int delta = offset - previous - 1;
+                if (delta < 64) {
+                    // same_frame
+                    out.write(delta);
+                } else {
+                    // same_frame_extended
+                    out.write(251);
+                    out.write(delta >> 8);
+                    out.write(delta);
+                }
+                previous = offset;
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * The constant pool of a class being generated. Every entry is added
+     * once and referred to by its index.
+     */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(entries);
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            Integer index = indexes.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(1);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            indexes.put("U" + value, count);
+            return count++;
+        }
+
+        int integer(int value) {
+            Integer index = indexes.get("I" + value);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(3);
+                out.writeInt(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            indexes.put("I" + value, count);
+            return count++;
+        }
+
+        int classRef(String name) {
+            Integer index = indexes.get("C" + name);
+            if (index != null) {
+                return index;
+            }
+            int nameIndex = utf8(name);
+            write(7, nameIndex, -1);
+            indexes.put("C" + name, count);
+            return count++;
+        }
+
+        int methodRef(String owner, String name, String type) {
+            String key = "M" + owner + "." + name + type;
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(type);
+            write(12, nameIndex, typeIndex);
+            int nameAndType = count++;
+            write(10, ownerIndex, nameAndType);
+            indexes.put(key, count);
+            return count++;
+        }
+
+        private void write(int tag, int first, int second) {
+            try {
+                out.writeByte(tag);
+                out.writeShort(first);
+                if (second >= 0) {
+                    out.writeShort(second);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void write(DataOutputStream file) throws IOException {
+            file.writeShort(count);
+            entries.writeTo(file);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package network;
+
+import java.util.Arrays;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The ProgramOptimizer rewrites a compiled Program into fewer instructions
+ * for the headless engines:
+ *
+ * - jumps to a JUMP go straight to where the chain of JUMPs ends
+ * - ADD 0, SUB 0 and a JUMP to the next instruction are dropped
+ * - NEGATE NEGATE and SWAP SWAP are dropped
+ * - SAVE SWAP becomes SAVE and SWAP SAVE becomes MOVE BAK ACC
+ * - MOVE x ACC followed by ADD or SUB of a register or literal becomes a
+ *   single MOVE_ADD or MOVE_SUB superinstruction
+ *
+ * Two instructions are only merged when no jump lands on the second one,
+ * and programs using JRO are left alone, since its offsets count the
+ * original instructions.
+ *
+ * In FAST mode every rewritten instruction takes one cycle. A silo then
+ * gets through its program in fewer cycles, but it still reads and writes
+ * the same values on each port in the same order, so the streams receive
+ * the same values, only sooner.
+ *
+ * In CYCLE_ACCURATE mode every instruction is charged the cycles of the
+ * instructions it replaces: the engine idles the silo after it, and a
+ * dropped instruction is charged to the one before it. Only merges where
+ * the port operation comes first are made, so every port operation happens
+ * in the same cycle as in the original program and the network runs for
+ * exactly the same number of cycles, with less dispatch per cycle.
+ */
+public final class ProgramOptimizer {
+    public static final int NONE = 0;
+    public static final int FAST = 1;
+    public static final int CYCLE_ACCURATE = 2;
+
+    private ProgramOptimizer() {
+    }
+
+    /**
+     * Returns the mode for its name on the command line, fast or accurate.
+     * @throws IllegalArgumentException for any other name
+     */
+    public static int modeFromName(String name) {
+        return switch (name) {
+            case "none" -> NONE;
+            case "fast" -> FAST;
+            case "accurate" -> CYCLE_ACCURATE;
+            default -> throw new IllegalArgumentException("Unknown optimization: " + name);
+        };
+    }
+
+    /**
+     * The optimize method returns the rewritten program, or the program
+     * itself if the mode is NONE or there is nothing to rewrite.
+     * @throws IllegalArgumentException if the mode is unknown
+     */
+    public static Program optimize(Program program, int mode) {
+        if (mode != NONE && mode != FAST && mode != CYCLE_ACCURATE) {
+            throw new IllegalArgumentException("Unknown optimization mode: " + mode);
+        }
+        if (mode == NONE || program == null) {
+            return program;
+        }
+        int n = program.length;
+        for (int i = 0; i < n; i++) {
+            if (program.op[i] == Program.JRO) {
+                return program;
+            }
+        }
+        boolean accurate = mode == CYCLE_ACCURATE;
+
+        // Thread jumps through chains of JUMPs, remembering the JUMPs skipped
+        int[] target = new int[n];
+        int[] skipped = new int[n];
+        boolean[] isTarget = new boolean[n];
+        boolean threaded = false;
+        for (int i = 0; i < n; i++) {
+            if (isJump(program.op[i])) {
+                int t = program.src[i];
+                int hops = 0;
+                while (program.op[t] == Program.JUMP && hops < n) {
+                    t = program.src[t];
+                    hops++;
+                }
+                if (hops == n) {
+                    // The chain loops forever, keep it as it is
+                    t = program.src[i];
+                    hops = 0;
+                }
+                target[i] = t;
+                skipped[i] = hops;
+                threaded |= hops > 0;
+                isTarget[t] = true;
+            }
+        }
+
+        int[] op = new int[n];
+        int[] srcKind = new int[n];
+        int[] src = new int[n];
+        int[] dstKind = new int[n];
+        int[] dst = new int[n];
+        int[] cost = new int[n];
+        int[] jumpCost = new int[n];
+        // The new index of each old instruction, or -1 where nothing new starts
+        int[] newIndex = new int[n];
+        Arrays.fill(newIndex, -1);
+        int size = 0;
+
+        int i = 0;
+        while (i < n) {
+            int length = 1;
+            int dropped = 0;
+            int fused = -1;
+            boolean pair = i + 1 < n && !isTarget[i + 1];
+            int first = program.op[i];
+            int second = pair ? program.op[i + 1] : -1;
+            if (pair && (first == Program.NEGATE && second == Program.NEGATE
+                    || first == Program.SWAP && second == Program.SWAP)) {
+                dropped = 2;
+            } else if (pair && first == Program.SAVE && second == Program.SWAP) {
+                fused = Program.SAVE;
+            } else if (pair && first == Program.SWAP && second == Program.SAVE) {
+                fused = Program.MOVE;
+            } else if (pair && first == Program.MOVE && program.dstKind[i] == Program.ACC
+                    && (second == Program.ADD || second == Program.SUB) && program.srcKind[i + 1] != Program.PORT) {
+                fused = second == Program.ADD ? Program.MOVE_ADD : Program.MOVE_SUB;
+            } else if ((first == Program.ADD || first == Program.SUB)
+                    && program.srcKind[i] == Program.LITERAL && program.src[i] == 0
+                    || first == Program.JUMP && target[i] == (i + 1) % n) {
+                dropped = 1;
+            }
+
+            if (dropped > 0) {
+                if (!accurate) {
+                    i += dropped;
+                    continue;
+                }
+                if (size > 0 && !isTarget[i] && op[size - 1] != Program.JUMP) {
+                    // Charge the dropped instructions to the one before, which falls through to them
+                    cost[size - 1] += dropped;
+                    i += dropped;
+                    continue;
+                }
+                op[size] = Program.NOOP;
+                cost[size] = dropped;
+                jumpCost[size] = 1;
+                length = dropped;
+            } else if (fused >= 0) {
+                op[size] = fused;
+                srcKind[size] = program.srcKind[i];
+                src[size] = program.src[i];
+                dstKind[size] = program.dstKind[i];
+                dst[size] = program.dst[i];
+                if (fused == Program.MOVE) {
+                    srcKind[size] = Program.BAK;
+                    dstKind[size] = Program.ACC;
+                } else if (fused != Program.SAVE) {
+                    dstKind[size] = program.srcKind[i + 1];
+                    dst[size] = program.src[i + 1];
+                }
+                cost[size] = accurate ? 2 : 1;
+                jumpCost[size] = 1;
+                length = 2;
+            } else {
+                op[size] = first;
+                srcKind[size] = program.srcKind[i];
+                src[size] = isJump(first) ? target[i] : program.src[i];
+                dstKind[size] = program.dstKind[i];
+                dst[size] = program.dst[i];
+                cost[size] = 1;
+                jumpCost[size] = accurate ? 1 + skipped[i] : 1;
+            }
+            newIndex[i] = size;
+            size++;
+            i += length;
+        }
+
+        if (size == 0 || size == n && !threaded) {
+            return program;
+        }
+        // Old indexes that were dropped continue at the next instruction that was kept
+        int next = 0;
+        for (int k = n - 1; k >= 0; k--) {
+            if (newIndex[k] >= 0) {
+                next = newIndex[k];
+            }
+        }
+        for (int k = n - 1; k >= 0; k--) {
+            if (newIndex[k] >= 0) {
+                next = newIndex[k];
+            } else {
+                newIndex[k] = next;
+            }
+        }
+        for (int k = 0; k < size; k++) {
+            if (isJump(op[k])) {
+                src[k] = newIndex[src[k]];
+            }
+        }
+        return new Program(Arrays.copyOf(op, size), Arrays.copyOf(srcKind, size), Arrays.copyOf(src, size),
+                Arrays.copyOf(dstKind, size), Arrays.copyOf(dst, size), Arrays.copyOf(cost, size),
+                Arrays.copyOf(jumpCost, size));
+    }
+
+    private static boolean isJump(int op) {
+        return op >= Program.JUMP && op <= Program.JLZ;
+    }
+}
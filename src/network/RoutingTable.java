@@ -0,0 +1,221 @@
+package network;
+
+import java.util.List;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The RoutingTable maps every silo port to the endpoint it talks to, so a
+ * port operation resolves with a single array lookup no matter how many
+ * streams are attached. Ports are indexed like the cells of the Grid,
+ * (row * numCols + col) * Port.COUNT + port.
+ *
+ * Reads and writes are routed separately. A read goes to the input stream
+ * next to the port if there is one, otherwise to the silo's own cell facing
+ * its neighbour. A write goes to the output stream next to the port if there
+ * is one, otherwise to the neighbour's cell facing back. A port on the edge
+ * of the grid with nothing suitable attached routes to EDGE.
+ *
+ * Streams are checked when they are added: they have to sit just outside
+ * the grid, next to exactly one silo, and no two streams may share a
+ * position. The validate methods check silo programs against the table, so
+ * a program using an EDGE port is reported when it is loaded instead of
+ * hanging or failing once it runs.
+ */
+public final class RoutingTable {
+    public static final int EDGE = 0;
+    public static final int SILO = 1;
+    public static final int INPUT = 2;
+    public static final int OUTPUT = 3;
+
+    private final int numRows;
+    private final int numCols;
+    private final int[] readKind;
+    private final int[] readTarget;
+    private final int[] writeKind;
+    private final int[] writeTarget;
+    private final boolean[] streamPorts;
+    private int numInputs;
+    private int numOutputs;
+
+    /**
+     * Creates the routes of a grid without streams, where every port
+     * facing a neighbour routes to it and every other port to EDGE.
+     */
+    public RoutingTable(int numRows, int numCols) {
+        if (numRows <= 0 || numCols <= 0) {
+            throw new IllegalArgumentException("Invalid grid size: " + numRows + " x " + numCols);
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        int numPorts = numRows * numCols * Port.COUNT;
+        readKind = new int[numPorts];
+        readTarget = new int[numPorts];
+        writeKind = new int[numPorts];
+        writeTarget = new int[numPorts];
+        // Whether a stream already sits in front of each port
+        streamPorts = new boolean[numPorts];
+
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < numCols; col++) {
+                for (int dir = 0; dir < Port.COUNT; dir++) {
+                    int port = portIndex(row, col, dir);
+                    int r = row + Port.rowOffset(dir);
+                    int c = col + Port.colOffset(dir);
+                    if (isInside(r, c)) {
+                        readKind[port] = SILO;
+                        readTarget[port] = port;
+                        writeKind[port] = SILO;
+                        writeTarget[port] = portIndex(r, c, Port.opposite(dir));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Attaches an input stream and returns its index, in the order input
+     * streams were added.
+     * @throws IllegalArgumentException if the stream is not next to the grid
+     */
+    public int addInputStream(int row, int col) {
+        int port = attach(row, col, "Input");
+        readKind[port] = INPUT;
+        readTarget[port] = numInputs;
+        return numInputs++;
+    }
+
+    /**
+     * Attaches an output stream and returns its index, in the order output
+     * streams were added.
+     * @throws IllegalArgumentException if the stream is not next to the grid
+     */
+    public int addOutputStream(int row, int col) {
+        int port = attach(row, col, "Output");
+        writeKind[port] = OUTPUT;
+        writeTarget[port] = numOutputs;
+        return numOutputs++;
+    }
+
+    /**
+     * Finds the port a stream at the given position connects to.
+     */
+    private int attach(int row, int col, String type) {
+        if (isInside(row, col)) {
+            throw new IllegalArgumentException(type + " stream at " + row + "," + col + " is inside the grid");
+        }
+        for (int dir = 0; dir < Port.COUNT; dir++) {
+            // The silo that has the stream in direction dir
+            int r = row - Port.rowOffset(dir);
+            int c = col - Port.colOffset(dir);
+            if (isInside(r, c)) {
+                int port = portIndex(r, c, dir);
+                if (streamPorts[port]) {
+                    throw new IllegalArgumentException(type + " stream at " + row + "," + col
+                            + " shares its position with another stream");
+                }
+                streamPorts[port] = true;
+                return port;
+            }
+        }
+        throw new IllegalArgumentException(type + " stream at " + row + "," + col + " is not next to any silo");
+    }
+
+    private boolean isInside(int row, int col) {
+        return row >= 0 && row < numRows && col >= 0 && col < numCols;
+    }
+
+    /**
+     * Returns the index of a silo port, which is also the index of the
+     * Grid cell the silo receives through on that port.
+     */
+    public int portIndex(int row, int col, int port) {
+        return (row * numCols + col) * Port.COUNT + port;
+    }
+
+    /**
+     * The readKind and readTarget methods return where reads from a port
+     * go: the index of an input stream, or the cell to take from.
+     */
+    public int readKind(int port) {
+        return readKind[port];
+    }
+
+    public int readTarget(int port) {
+        return readTarget[port];
+    }
+
+    /**
+     * The writeKind and writeTarget methods return where writes to a port
+     * go: the index of an output stream, or the cell to put into.
+     */
+    public int writeKind(int port) {
+        return writeKind[port];
+    }
+
+    public int writeTarget(int port) {
+        return writeTarget[port];
+    }
+
+    /**
+     * The validate method checks that a program only reads from ports with
+     * something to read from and only writes to ports with something to
+     * write to.
+     * @throws IllegalArgumentException naming the first offending
+     * instruction
+     */
+    public void validate(int row, int col, Program program) {
+        for (int i = 0; i < program.length; i++) {
+            if (program.srcKind[i] == Program.PORT && readKind[portIndex(row, col, program.src[i])] == EDGE) {
+                throw new IllegalArgumentException("Silo " + row + "," + col + " reads from "
+                        + Port.name(program.src[i]) + " in instruction " + i + ", but nothing is connected there");
+            }
+            if (program.dstKind[i] == Program.PORT && writeKind[portIndex(row, col, program.dst[i])] == EDGE) {
+                throw new IllegalArgumentException("Silo " + row + "," + col + " writes to "
+                        + Port.name(program.dst[i]) + " in instruction " + i + ", but nothing is connected there");
+            }
+        }
+    }
+
+    /**
+     * Compiles and validates the program of every silo, given row by row
+     * as in Parser.InputFileData.
+     */
+    public void validate(List<String> siloPrograms) {
+        validate(siloPrograms, new ProgramCache());
+    }
+
+    /**
+     * Validates the program of every silo like validate does, compiling
+     * them with the given ProgramCache, so they are ready when the silos
+     * start.
+     */
+    public void validate(List<String> siloPrograms, ProgramCache cache) {
+        for (int i = 0; i < numRows * numCols && i < siloPrograms.size(); i++) {
+            String code = siloPrograms.get(i);
+            if (code != null && !code.isEmpty()) {
+                validate(i / numCols, i % numCols, cache.get(code));
+            }
+        }
+    }
+
+    /**
+     * Validates programs that are already compiled, one per silo row by
+     * row, null for a silo without one.
+     */
+    void validate(Program[] programs) {
+        for (int i = 0; i < numRows * numCols && i < programs.length; i++) {
+            if (programs[i] != null) {
+                validate(i / numCols, i % numCols, programs[i]);
+            }
+        }
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+}
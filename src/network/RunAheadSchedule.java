@@ -0,0 +1,136 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The RunAheadSchedule keeps track of the silos of a SiloNetwork that run
+ * ahead. A silo whose next instructions touch no port cannot affect any
+ * other silo until it reaches its next port instruction, so it executes
+ * all of them at once and sleeps until the cycle in which that port
+ * instruction is due, instead of waiting at the barrier after every one.
+ *
+ * A sleeping silo stays a party of the phaser, so the phaser cannot get
+ * past the cycle in which it wakes. It arrives for the cycle it ran ahead
+ * in itself. For the cycles after that, the thread completing the previous
+ * cycle arrives on its behalf. That is a single arrive per sleeping silo
+ * instead of parking and waking its thread. The silo is woken when the
+ * cycle its port instruction is due in begins, so every port operation
+ * happens in the same cycle as without running ahead. If only sleeping
+ * silos are left to complete the cycles, the one due first is woken early
+ * to keep the clock going.
+ *
+ * Phases wrap around to 0 after Integer.MAX_VALUE, so they are only ever
+ * compared by their distance.
+ */
+final class RunAheadSchedule {
+    private final Phaser phaser;
+    private final List<SiloState> sleepers = new ArrayList<>();
+    // The thread that has to arrive for the sleepers in proxyPhase
+    private volatile Thread proxyThread;
+    private int proxyPhase;
+
+    RunAheadSchedule(Phaser phaser) {
+        this.phaser = phaser;
+    }
+
+    /**
+     * Adds a silo that has run ahead. It must still be a party of the
+     * phaser and not have arrived yet.
+     */
+    synchronized void add(SiloState silo) {
+        silo.setAsleep(true);
+        sleepers.add(silo);
+    }
+
+    /**
+     * Wakes a silo before it is due, as when the network is paused. Does
+     * nothing if it is awake already.
+     */
+    synchronized void remove(SiloState silo) {
+        if (sleepers.remove(silo)) {
+            silo.setAsleep(false);
+        }
+    }
+
+    /**
+     * Wakes every sleeping silo, so a pause can stop them.
+     */
+    synchronized void wakeAll() {
+        for (SiloState silo : sleepers) {
+            wake(silo);
+        }
+        sleepers.clear();
+    }
+
+    /**
+     * The advance method is called when a cycle completes, with the phase
+     * that begins. It wakes the silos due in it, and the one due first if
+     * no other silo is left to complete the cycle. The calling thread then
+     * arrives for the rest in arriveForSleepers.
+     */
+    synchronized void advance(int phase, int registeredParties) {
+        if (sleepers.isEmpty()) {
+            return;
+        }
+        SiloState first = null;
+        for (int i = sleepers.size() - 1; i >= 0; i--) {
+            SiloState silo = sleepers.get(i);
+            if (silo.getWakePhase() == phase) {
+                wake(silo);
+                sleepers.remove(i);
+            } else if (first == null
+                    || distance(phase, silo.getWakePhase()) < distance(phase, first.getWakePhase())) {
+                first = silo;
+            }
+        }
+        if (first != null && registeredParties == sleepers.size()) {
+            wake(first);
+            sleepers.remove(first);
+        }
+        if (!sleepers.isEmpty()) {
+            proxyPhase = phase;
+            proxyThread = Thread.currentThread();
+        }
+    }
+
+    /**
+     * Called after every arrival at the phaser. If that arrival completed
+     * the cycle, arrives for the sleeping silos in the new one, and goes
+     * on as long as that completes cycles too.
+     */
+    void arriveForSleepers() {
+        while (proxyThread == Thread.currentThread()) {
+            int count = 0;
+            synchronized (this) {
+                proxyThread = null;
+                for (SiloState silo : sleepers) {
+                    // Silos that ran ahead in this cycle have arrived themselves
+                    if (silo.getAheadPhase() != proxyPhase) {
+                        silo.proxyArrived();
+                        count++;
+                    }
+                }
+            }
+            for (; count > 0; count--) {
+                phaser.arrive();
+            }
+        }
+    }
+
+    /**
+     * Returns how many cycles the phase to comes after the phase from.
+     */
+    static int distance(int from, int to) {
+        return (to - from) & Integer.MAX_VALUE;
+    }
+
+    private static void wake(SiloState silo) {
+        silo.setAsleep(false);
+        LockSupport.unpark(silo.getThread());
+    }
+}
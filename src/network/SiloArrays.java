@@ -0,0 +1,203 @@
+package network;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * SiloArrays hold the state of a network stepped by a headless engine: the
+ * registers of every silo in flat arrays, the pending value cell of every
+ * silo port and the streams around the grid. The LockstepEngine and the
+ * TiledEngine keep theirs in one and step it with a SiloStepper, so both
+ * run the same code and only differ in how they go through the silos.
+ */
+final class SiloArrays {
+    static final int RUNNING = 0;
+    static final int WRITING = 1;
+    static final int HALTED = 2;
+
+    final int numRows;
+    final int numCols;
+    final int numSilos;
+    final Program[] programs;
+    // The silos that are stepped, leaving out the idle ones
+    final int[] active;
+
+    final int[] acc;
+    final int[] bak;
+    final int[] pc;
+    final int[] status;
+    final int[] writeCell;
+    // Cycles a silo still idles for, charged by cycle accurate optimized programs
+    final int[] busy;
+
+    // One cell per silo port, indexed by silo * 4 + port of the receiving silo
+    final int[] cellValue;
+    final boolean[] cellFull;
+    final long[] postCycle;
+    final long[] takeCycle;
+
+    final RoutingTable routes;
+    final List<IntRingBuffer> inputStreams = new ArrayList<>();
+    final List<IntSource> inputSources = new ArrayList<>();
+    final List<IntRingBuffer> outputStreams = new ArrayList<>();
+    final List<IntSink> outputSinks = new ArrayList<>();
+    long[] outputCounts = new long[0];
+
+    /**
+     * Compiles the program of every silo, given row by row as in
+     * Parser.InputFileData, and leaves out the idle ones, see activeSilos.
+     * @throws IllegalArgumentException if a program does not compile
+     */
+    SiloArrays(int numRows, int numCols, List<String> siloPrograms) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.numSilos = numRows * numCols;
+        programs = new Program[numSilos];
+        // Silos with the same code share its Program
+        ProgramCache cache = new ProgramCache();
+        for (int i = 0; i < numSilos && i < siloPrograms.size(); i++) {
+            String code = siloPrograms.get(i);
+            if (code != null && !code.isEmpty()) {
+                Program program = cache.get(code);
+                programs[i] = program.length > 0 ? program : null;
+            }
+        }
+        active = activeSilos(programs);
+
+        acc = new int[numSilos];
+        bak = new int[numSilos];
+        pc = new int[numSilos];
+        status = new int[numSilos];
+        writeCell = new int[numSilos];
+        busy = new int[numSilos];
+        cellValue = new int[numSilos * 4];
+        cellFull = new boolean[numSilos * 4];
+        postCycle = new long[numSilos * 4];
+        takeCycle = new long[numSilos * 4];
+        routes = new RoutingTable(numRows, numCols);
+    }
+
+    /**
+     * Returns the indexes of the silos with a program that is not idle from
+     * its first instruction.
+     */
+    static int[] activeSilos(Program[] programs) {
+        int count = 0;
+        int[] active = new int[programs.length];
+        for (int s = 0; s < programs.length; s++) {
+            if (programs[s] != null && !programs[s].isIdleFrom(0)) {
+                active[count++] = s;
+            }
+        }
+        return Arrays.copyOf(active, count);
+    }
+
+    /**
+     * Attaches the streams of a parsed input file and validates the
+     * programs against them.
+     * @throws IllegalArgumentException if a stream or program is misplaced
+     */
+    void attach(Parser.InputFileData fileData) {
+        for (Stream stream : fileData.getInputStreams()) {
+            addInputStream(stream.getRow(), stream.getCol(), stream.toArray());
+            inputSources.set(inputSources.size() - 1, stream.getSource());
+        }
+        for (Stream stream : fileData.getOutputStreams()) {
+            addOutputStream(stream.getRow(), stream.getCol());
+            outputSinks.set(outputSinks.size() - 1, stream.getSink());
+        }
+        routes.validate(programs);
+    }
+
+    void addInputStream(int row, int col, int[] values) {
+        routes.addInputStream(row, col);
+        IntRingBuffer input = new IntRingBuffer(values.length);
+        for (int value : values) {
+            input.add(value);
+        }
+        inputStreams.add(input);
+        inputSources.add(null);
+    }
+
+    void addOutputStream(int row, int col) {
+        routes.addOutputStream(row, col);
+        outputStreams.add(new IntRingBuffer());
+        outputSinks.add(null);
+        outputCounts = Arrays.copyOf(outputCounts, outputCounts.length + 1);
+    }
+
+    /**
+     * Writes a value to an output stream, or to its sink if it has one.
+     */
+    void emit(int k, int value) {
+        outputCounts[k]++;
+        IntSink sink = outputSinks.get(k);
+        if (sink == null) {
+            outputStreams.get(k).add(value);
+        } else {
+            try {
+                sink.write(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Lists the port every silo is stuck on, when none of them got anywhere
+     * in the cycle, in the order of the grid. A silo that is not writing or
+     * halted stalled on the port its instruction reads from.
+     */
+    Deadlock findDeadlock(long t) {
+        Deadlock found = new Deadlock(t);
+        for (int s : active) {
+            Program program = programs[s];
+            int i = pc[s];
+            if (status[s] == HALTED) {
+                found.add(s / numCols, s % numCols, Deadlock.HALTED, 0, false);
+            } else if (status[s] == WRITING) {
+                found.add(s / numCols, s % numCols, Deadlock.WRITE, program.dst[i], false);
+            } else {
+                int port = program.src[i];
+                found.add(s / numCols, s % numCols, Deadlock.READ, port,
+                        routes.readKind(s * 4 + port) == RoutingTable.INPUT);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Writes out the values the output sinks have collected so far.
+     */
+    void flush() throws IOException {
+        for (IntSink sink : outputSinks) {
+            if (sink != null) {
+                sink.flush();
+            }
+        }
+    }
+
+    /**
+     * Closes the input sources and output sinks, writing out the values
+     * the sinks still hold.
+     */
+    void close() throws IOException {
+        for (int k = 0; k < inputSources.size(); k++) {
+            if (inputSources.get(k) != null) {
+                inputSources.get(k).close();
+                inputSources.set(k, null);
+            }
+        }
+        for (int k = 0; k < outputSinks.size(); k++) {
+            if (outputSinks.get(k) != null) {
+                outputSinks.get(k).close();
+                outputSinks.set(k, null);
+            }
+        }
+    }
+}
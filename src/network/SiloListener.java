@@ -0,0 +1,58 @@
+package network;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The SiloListener interface is how a SiloState reports changes of its
+ * registers, its mode and its port transfers to whoever displays it. The
+ * GUI subscribes with its SiloGraphic. Headless runs keep the default NONE
+ * listener, whose methods do nothing, so executing an instruction costs no
+ * UI work at all. Callbacks run on the silo's own thread.
+ */
+public interface SiloListener {
+    /**
+     * A listener that ignores every event.
+     */
+    SiloListener NONE = new SiloListener() {
+    };
+
+    /**
+     * Called when the ACC register is set.
+     */
+    default void accChanged(int acc) {
+    }
+
+    /**
+     * Called when the BAK register is set.
+     */
+    default void bakChanged(int bak) {
+    }
+
+    /**
+     * Called when the silo switches between IDLE, READ and WRITE.
+     */
+    default void modeChanged(SiloState.Mode mode) {
+    }
+
+    /**
+     * Called when the silo starts waiting for a value on a port.
+     */
+    default void readStarted(int port) {
+    }
+
+    /**
+     * Called when the silo offers a value on a port, and again when the
+     * value has been taken.
+     */
+    default void writeStarted(int port, int value) {
+    }
+
+    default void writeFinished(int port) {
+    }
+
+    /**
+     * Called when the silo is reset and no transfer is in progress anymore.
+     */
+    default void transfersCleared() {
+    }
+}
@@ -0,0 +1,133 @@
+package network;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The SiloMetrics class counts what a single silo spends its time on:
+ * instructions retired, cycles it took part in, cycles it was blocked
+ * reading from or writing to a port, and the time it waited at the barrier
+ * for the other silos.
+ *
+ * Every counter is written only by the silo's own thread, so updating one
+ * is a plain increment without atomics or contention. The counters are
+ * stored with opaque accesses, which keeps a long from tearing when another
+ * thread reads it. Readers may see a value that is a little behind.
+ */
+public final class SiloMetrics {
+    private static final VarHandle INSTRUCTIONS;
+    private static final VarHandle CYCLES;
+    private static final VarHandle READ_STALL_CYCLES;
+    private static final VarHandle WRITE_STALL_CYCLES;
+    private static final VarHandle READ_WAIT_NANOS;
+    private static final VarHandle WRITE_WAIT_NANOS;
+    private static final VarHandle BARRIER_WAIT_NANOS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            INSTRUCTIONS = lookup.findVarHandle(SiloMetrics.class, "instructions", long.class);
+            CYCLES = lookup.findVarHandle(SiloMetrics.class, "cycles", long.class);
+            READ_STALL_CYCLES = lookup.findVarHandle(SiloMetrics.class, "readStallCycles", long.class);
+            WRITE_STALL_CYCLES = lookup.findVarHandle(SiloMetrics.class, "writeStallCycles", long.class);
+            READ_WAIT_NANOS = lookup.findVarHandle(SiloMetrics.class, "readWaitNanos", long.class);
+            WRITE_WAIT_NANOS = lookup.findVarHandle(SiloMetrics.class, "writeWaitNanos", long.class);
+            BARRIER_WAIT_NANOS = lookup.findVarHandle(SiloMetrics.class, "barrierWaitNanos", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private long instructions;
+    private long cycles;
+    private long readStallCycles;
+    private long writeStallCycles;
+    private long readWaitNanos;
+    private long writeWaitNanos;
+    private long barrierWaitNanos;
+
+    private static void add(VarHandle counter, SiloMetrics metrics, long delta) {
+        counter.setOpaque(metrics, (long) counter.getOpaque(metrics) + delta);
+    }
+
+    /**
+     * Called by the silo's thread after it has completed an instruction.
+     */
+    void instructionRetired() {
+        add(INSTRUCTIONS, this, 1);
+    }
+
+    /**
+     * Called by the silo's thread after it has run ahead over a number of
+     * instructions at once.
+     */
+    void instructionsRetired(long count) {
+        add(INSTRUCTIONS, this, count);
+    }
+
+    /**
+     * Called by the silo's thread after it has passed the barrier, with
+     * the time it waited there.
+     */
+    void cycleCompleted(long waitNanos) {
+        add(CYCLES, this, 1);
+        add(BARRIER_WAIT_NANOS, this, waitNanos);
+    }
+
+    /**
+     * Called by the silo's thread after it has slept through a number of
+     * cycles it ran ahead over, with the time it slept.
+     */
+    void cyclesCompleted(long count, long waitNanos) {
+        add(CYCLES, this, count);
+        add(BARRIER_WAIT_NANOS, this, waitNanos);
+    }
+
+    /**
+     * Called by the silo's thread when a read from a port has completed,
+     * with the cycles that passed and the time spent waiting for it.
+     */
+    void readCompleted(long stallCycles, long waitNanos) {
+        add(READ_STALL_CYCLES, this, stallCycles);
+        add(READ_WAIT_NANOS, this, waitNanos);
+    }
+
+    /**
+     * Called by the silo's thread when a write to a port has been taken,
+     * with the cycles that passed and the time spent waiting for it.
+     */
+    void writeCompleted(long stallCycles, long waitNanos) {
+        add(WRITE_STALL_CYCLES, this, stallCycles);
+        add(WRITE_WAIT_NANOS, this, waitNanos);
+    }
+
+    public long getInstructions() {
+        return (long) INSTRUCTIONS.getOpaque(this);
+    }
+
+    public long getCycles() {
+        return (long) CYCLES.getOpaque(this);
+    }
+
+    public long getReadStallCycles() {
+        return (long) READ_STALL_CYCLES.getOpaque(this);
+    }
+
+    public long getWriteStallCycles() {
+        return (long) WRITE_STALL_CYCLES.getOpaque(this);
+    }
+
+    public long getReadWaitNanos() {
+        return (long) READ_WAIT_NANOS.getOpaque(this);
+    }
+
+    public long getWriteWaitNanos() {
+        return (long) WRITE_WAIT_NANOS.getOpaque(this);
+    }
+
+    public long getBarrierWaitNanos() {
+        return (long) BARRIER_WAIT_NANOS.getOpaque(this);
+    }
+}
@@ -1,8 +1,19 @@
 package network;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Phaser;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
@@ -14,11 +25,29 @@ import java.util.concurrent.SynchronousQueue;
  * methods to start, pause, step, and stop the simulation.
  */
 public class SiloNetwork {
+    private static final AtomicInteger networkIds = new AtomicInteger();
+
     private final Grid grid;
     private final Phaser phaser;
+    private final RunAheadSchedule runAheadSchedule;
+    private final PortWaits portWaits = new PortWaits(this::checkDeadlock);
+    private final AtomicReference<Deadlock> deadlock = new AtomicReference<>();
+    private final EngineClock clock = new EngineClock();
 
     private final List<Stream> inputStreams;
     private final List<Stream> outputStreams;
+    private final RoutingTable routes;
+    private final Stream[] inputs;
+    private final Stream[] outputs;
+
+    private final ExecutionMode executionMode;
+    private final ThreadFactory siloThreadFactory;
+    private volatile ProgramCompiler programCompiler;
+    private final ProgramCache programCache = new ProgramCache();
+    private volatile boolean runAhead = true;
+    private ObjectName mbeanName;
+    private volatile boolean running;
+    private final AtomicReference<CompletableFuture<Checkpoint>> pendingCheckpoint = new AtomicReference<>();
 
     /**
      * The constructor initializes the grid, phaser, input and output streams.
@@ -28,10 +57,62 @@ public class SiloNetwork {
      * @param outputStreams defines the output streams of the siloNetwork
      */
     public SiloNetwork(int numRows, int numCols, List<Stream> inputStreams, List<Stream> outputStreams) {
+        this(numRows, numCols, inputStreams, outputStreams, ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * This constructor also takes the ExecutionMode deciding which kind of
+     * thread the silo interpreters run on.
+     * @param executionMode defines the kind of thread silos run on
+     * @throws IllegalArgumentException if a stream is not next to the grid
+     */
+    public SiloNetwork(int numRows, int numCols, List<Stream> inputStreams, List<Stream> outputStreams,
+                       ExecutionMode executionMode) {
         this.inputStreams = inputStreams;
         this.outputStreams = outputStreams;
+        this.executionMode = executionMode;
         grid = new Grid(numRows, numCols);
-        phaser = new Phaser(numRows * numCols );
+        grid.setPortWaits(portWaits);
+
+        // Resolve every port once, so port I/O never searches the streams
+        routes = new RoutingTable(numRows, numCols);
+        inputs = new Stream[inputStreams.size()];
+        for (Stream stream : inputStreams) {
+            inputs[routes.addInputStream(stream.getRow(), stream.getCol())] = stream;
+            stream.setPortWaits(portWaits);
+        }
+        outputs = new Stream[outputStreams.size()];
+        for (Stream stream : outputStreams) {
+            outputs[routes.addOutputStream(stream.getRow(), stream.getCol())] = stream;
+        }
+
+        phaser = new Phaser(numRows * numCols) {
+            /**
+             * Runs once per cycle, in the last silo to arrive. A requested
+             * checkpoint is taken here, while no silo can start the next
+             * cycle. The clock holds the whole network here until the next
+             * tick is due. Then the silos running ahead that are due in the
+             * next cycle are woken. Returning false keeps the phaser alive
+             * even when every silo has deregistered to wait on a port.
+             */
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                int next = (phase + 1) & Integer.MAX_VALUE;
+                CompletableFuture<Checkpoint> request = pendingCheckpoint.get();
+                if (request != null && pendingCheckpoint.compareAndSet(request, null)) {
+                    try {
+                        request.complete(capture(next));
+                    } catch (RuntimeException e) {
+                        request.completeExceptionally(e);
+                    }
+                }
+                clock.awaitTick();
+                runAheadSchedule.advance(next, registeredParties);
+                return false;
+            }
+        };
+        runAheadSchedule = new RunAheadSchedule(phaser);
+        siloThreadFactory = executionMode.threadFactory("silo-");
     }
 
     /**
@@ -45,6 +126,14 @@ public class SiloNetwork {
         return siloState;
     }
 
+    /**
+     * Returns the SiloState at the given row and column, or null if there is
+     * none.
+     */
+    public SiloState getSilo(int row, int col) {
+        return grid.getSilo(row, col);
+    }
+
     /**
      * stopThreads, startSilos, startInputStreams, stopSilos, pauseSilos
      * and stepSilos are all used to control the flow of the program. These
@@ -61,6 +150,28 @@ public class SiloNetwork {
     }
 
     public synchronized void startSilos() {
+        running = true;
+        clock.setPaused(false);
+        // Idle silos leave the barrier before any silo can arrive at it, the last one advancing it
+        long cycle = clock.getTickCount() + 1;
+        int silos = 0;
+        for (int row = 0; row < grid.getNumRows(); row++) {
+            for (int col = 0; col < grid.getNumCols(); col++) {
+                SiloState silo = grid.getSilo(row, col);
+                silo.leaveIfIdle();
+                if (!silo.isIdle()) {
+                    silos++;
+                }
+            }
+        }
+        portWaits.setSilos(silos);
+        if (silos == 0) {
+            // No silo will ever park and run the check, so nothing runs from the next cycle on
+            running = false;
+            clock.setPaused(true);
+            deadlock.compareAndSet(null, new Deadlock(cycle));
+            return;
+        }
         for (int row = 0; row < grid.getNumRows(); row++) {
             for (int col = 0; col < grid.getNumCols(); col++) {
                 SiloState silo = grid.getSilo(row, col);
@@ -76,12 +187,23 @@ public class SiloNetwork {
     }
 
     public synchronized void pauseSilos() {
+        running = false;
+        clock.setPaused(true);
         for (int row = 0; row < grid.getNumRows(); row++) {
             for (int col = 0; col < grid.getNumCols(); col++) {
                 SiloState silo = grid.getSilo(row, col);
                 silo.pause();
             }
         }
+        runAheadSchedule.wakeAll();
+        // Let output files catch up while the network is paused
+        for (Stream outputStream : outputStreams) {
+            try {
+                outputStream.flush();
+            } catch (IOException e) {
+                System.out.println("Could not flush output stream: " + e.getMessage());
+            }
+        }
     }
 
     public void stepSilos() {
@@ -96,6 +218,7 @@ public class SiloNetwork {
     }
 
     public synchronized void stopSilos() {
+        running = false;
         for (int row = 0; row < grid.getNumRows(); row++) {
             for (int col = 0; col < grid.getNumCols(); col++) {
                 SiloState silo = grid.getSilo(row, col);
@@ -106,10 +229,212 @@ public class SiloNetwork {
         }
     }
 
+    /**
+     * The reset method puts the network back to where it was before it
+     * first ran, without rebuilding it: silos keep their threads and code
+     * but start over from their first instruction with cleared registers,
+     * values handed between silos are dropped, input streams hand out
+     * their values from the first one again and output streams are
+     * emptied. Silos blocked on a port are released from it, and silos
+     * the pause left waiting at the barrier are let through, so the next
+     * start begins the same cycle on every silo. Metrics keep counting.
+     */
+    public synchronized void reset() throws IOException {
+        pauseSilos();
+        // Wait for every silo to finish its instruction, aborting port operations
+        awaitSilos(true);
+        // Complete the cycle that silos which finished their instruction wait for
+        if (phaser.getArrivedParties() > 0) {
+            for (int i = phaser.getUnarrivedParties(); i > 0; i--) {
+                phaser.arrive();
+            }
+            runAheadSchedule.arriveForSleepers();
+        }
+        // Wait for aborted silos to park, so none of them aborts after the next start
+        awaitSilos(false);
+
+        for (int row = 0; row < grid.getNumRows(); row++) {
+            for (int col = 0; col < grid.getNumCols(); col++) {
+                SiloState silo = grid.getSilo(row, col);
+                if (silo != null) {
+                    silo.reset();
+                }
+            }
+        }
+        grid.clear();
+        for (Stream inputStream : inputStreams) {
+            inputStream.reset();
+        }
+        for (Stream outputStream : outputStreams) {
+            outputStream.reset();
+        }
+        clock.setTickCount(0);
+        // Released from their ports, the silos no longer wait
+        deadlock.set(null);
+    }
+
+    /**
+     * Waits until no silo is executing an instruction. With abort set,
+     * silos blocked on a port are released from it, otherwise the wait is
+     * for silos to clear an earlier abort request.
+     */
+    private void awaitSilos(boolean abort) {
+        for (int attempt = 0; ; attempt++) {
+            boolean settled = true;
+            for (int row = 0; row < grid.getNumRows(); row++) {
+                for (int col = 0; col < grid.getNumCols(); col++) {
+                    SiloState silo = grid.getSilo(row, col);
+                    if (silo == null) {
+                        continue;
+                    }
+                    int activity = silo.getActivity();
+                    if (abort && (activity == SiloState.READING || activity == SiloState.WRITING)) {
+                        if (!silo.isAbortRequested()) {
+                            silo.abortPortOperation();
+                        }
+                        settled = false;
+                    } else if (activity != SiloState.SETTLED || (!abort && silo.isAbortRequested())) {
+                        settled = false;
+                    }
+                }
+            }
+            if (settled) {
+                return;
+            }
+            if (attempt < 16) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(50_000);
+            }
+        }
+    }
+
+    /**
+     * The getDeadlock method returns the Deadlock the network ran into, or
+     * null while any silo can still make progress. It is found as soon as
+     * the last silo that runs starts waiting on a port, or by startSilos
+     * when every silo is idle, and the network keeps it until it is reset.
+     * The silos just stay parked on their ports, so pausing the network
+     * afterwards only flushes the output files.
+     */
+    public Deadlock getDeadlock() {
+        return deadlock.get();
+    }
+
+    /**
+     * Called by the PortWaits in the thread of the last silo to park on a
+     * port. The network is deadlocked if every silo that runs is parked on
+     * a port on which it cannot get anywhere, and no silo stopped waiting
+     * while they were looked at: a reader's cell is empty or its input
+     * stream has run out, and a writer's value is still in the cell,
+     * because its reader waits on another port. Until one of them moves,
+     * none can, and none of them will.
+     */
+    private void checkDeadlock() {
+        long ended = portWaits.getEnded();
+        if (deadlock.get() != null || !portWaits.allWaiting()) {
+            return;
+        }
+        Deadlock found = new Deadlock(clock.getTickCount());
+        for (int row = 0; row < grid.getNumRows(); row++) {
+            for (int col = 0; col < grid.getNumCols(); col++) {
+                SiloState silo = grid.getSilo(row, col);
+                if (silo == null || silo.isIdle()) {
+                    continue;
+                }
+                int activity = silo.getActivity();
+                int port = silo.getActivityPort();
+                int portIndex = routes.portIndex(row, col, port);
+                if (activity == SiloState.READING && routes.readKind(portIndex) == RoutingTable.INPUT) {
+                    if (!inputs[routes.readTarget(portIndex)].isDrained()) {
+                        return;
+                    }
+                    found.add(row, col, Deadlock.READ, port, true);
+                } else if (activity == SiloState.READING && routes.readKind(portIndex) == RoutingTable.SILO) {
+                    if (grid.isFull(routes.readTarget(portIndex))) {
+                        return;
+                    }
+                    found.add(row, col, Deadlock.READ, port, false);
+                } else if (activity == SiloState.WRITING && routes.writeKind(portIndex) == RoutingTable.SILO) {
+                    if (!grid.isFull(routes.writeTarget(portIndex))) {
+                        return;
+                    }
+                    found.add(row, col, Deadlock.WRITE, port, false);
+                } else {
+                    return;
+                }
+            }
+        }
+        if (portWaits.getEnded() == ended && portWaits.allWaiting()) {
+            deadlock.compareAndSet(null, found);
+        }
+    }
+
     public Phaser getPhaser() {
         return phaser;
     }
 
+    /**
+     * Returns the EngineClock that paces the cycles of this network.
+     */
+    public EngineClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Creates the thread a silo's interpreter runs on, using the
+     * ExecutionMode of the network.
+     */
+    public Thread newSiloThread(Runnable interpreter) {
+        return siloThreadFactory.newThread(interpreter);
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * The setProgramCompiler method lets silos compile their programs to
+     * bytecode once they are hot, see ProgramCompiler. Passing null, the
+     * default, keeps every program interpreted. Silos that already run
+     * compiled code keep it, across pauses and resets, until their code is
+     * changed.
+     */
+    public void setProgramCompiler(ProgramCompiler programCompiler) {
+        this.programCompiler = programCompiler;
+    }
+
+    public ProgramCompiler getProgramCompiler() {
+        return programCompiler;
+    }
+
+    /**
+     * Returns the ProgramCache the silos compile their code with, so silos
+     * with the same code share one Program, also across restarts.
+     */
+    public ProgramCache getProgramCache() {
+        return programCache;
+    }
+
+    /**
+     * The setRunAhead method decides whether silos may execute instructions
+     * that touch no port ahead of the other silos while the clock is
+     * unthrottled, see RunAheadSchedule. It is on by default. Ports are
+     * still read from and written to in the same cycles, only the barrier
+     * is passed less often.
+     */
+    public void setRunAhead(boolean runAhead) {
+        this.runAhead = runAhead;
+    }
+
+    public boolean isRunAhead() {
+        return runAhead;
+    }
+
+    RunAheadSchedule getRunAheadSchedule() {
+        return runAheadSchedule;
+    }
+
     /**
      * The receiveValue method handles receiving a value from a silo or stream.
      * @param r is the row of the silo
@@ -117,18 +442,26 @@ public class SiloNetwork {
      * @param port is where a silo would receive value from
      */
     public int receiveValue(int r, int c, String port) {
+        return receiveValue(r, c, portId(port));
+    }
+
+    /**
+     * Receives a value on the port with the given Port id. Values from a
+     * neighbouring silo arrive through the silo's own cell in the Grid.
+     */
+    public int receiveValue(int r, int c, int port) {
         int value = 0;
-        SynchronousQueue<Integer> queue = grid.getQueue(r, c, port);
-        for (Stream inputStream : inputStreams) {
-            if (isSiloNextToStream(r, c, inputStream.getRow(), inputStream.getCol(), port)) {
-                //sets queue to the queue of the stream
-                queue = inputStream.getQueue();
-            }
-        }
+        int index = routes.portIndex(r, c, port);
         try {
-            value = queue.take();
+            switch (routes.readKind(index)) {
+                case RoutingTable.INPUT -> value = inputs[routes.readTarget(index)].take();
+                case RoutingTable.SILO -> value = grid.take(routes.readTarget(index));
+                default -> throw new IllegalArgumentException("No silo or stream on port " + Port.name(port)
+                        + " of silo " + r + "," + c);
+            }
         } catch (InterruptedException e) {
-            System.out.println("Interrupted while waiting for value from silo");
+            // Keep the interrupt for the silo, a reset uses it to abort the read
+            Thread.currentThread().interrupt();
         }
         return value;
     }
@@ -141,49 +474,288 @@ public class SiloNetwork {
      * @param value is the number being sent
      */
     public void sendValue(int r, int c, String port, int value) throws InterruptedException {
-        for (Stream outputStream : outputStreams) {
-            if (isSiloNextToStream(r, c, outputStream.getRow(), outputStream.getCol(), port)) {
-                outputStream.addValue(value);
-                return;
+        sendValue(r, c, portId(port), value);
+    }
+
+    /**
+     * Sends a value through the port with the given Port id. A value for a
+     * neighbouring silo goes into the neighbour's cell facing back at us.
+     */
+    public void sendValue(int r, int c, int port, int value) throws InterruptedException {
+        int index = routes.portIndex(r, c, port);
+        switch (routes.writeKind(index)) {
+            case RoutingTable.OUTPUT -> outputs[routes.writeTarget(index)].addValue(value);
+            case RoutingTable.SILO -> grid.put(routes.writeTarget(index), value);
+            default -> throw new IllegalArgumentException("No silo or stream on port " + Port.name(port)
+                    + " of silo " + r + "," + c);
+        }
+    }
+
+    private static int portId(String port) {
+        int id = Port.fromName(port);
+        if (id < 0) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the RoutingTable resolving the ports of this network, which
+     * can also validate silo programs before they run.
+     */
+    public RoutingTable getRoutes() {
+        return routes;
+    }
+
+    /**
+     * The checkpoint method takes a consistent snapshot of the network at
+     * a cycle boundary. While the network runs, it is taken by the silo
+     * completing the next cycle, which holds up the network for as long as
+     * it takes to copy the state. A paused network is snapshotted once the
+     * silos have finished their current instruction.
+     *
+     * Silos blocked on a port are not at the boundary. A silo that has
+     * read its value but not used it yet is moved to the end of its
+     * instruction, and a silo still waiting for its value to be taken
+     * keeps the value as a pending write, which it finishes first when the
+     * checkpoint is restored.
+     */
+    public Checkpoint checkpoint() throws InterruptedException {
+        synchronized (pendingCheckpoint) {
+            CompletableFuture<Checkpoint> request = new CompletableFuture<>();
+            pendingCheckpoint.set(request);
+            while (true) {
+                try {
+                    return request.get(10, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Without running silos no cycle will complete, take it here
+                    if ((!running || phaser.getRegisteredParties() == 0)
+                            && pendingCheckpoint.compareAndSet(request, null)) {
+                        return capture(-1);
+                    }
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Could not take checkpoint", e.getCause());
+                }
             }
         }
-        SynchronousQueue<Integer> queue;
-        switch (port) {
-            case "UP" -> queue = grid.getQueue(r - 1, c, "DOWN");
-            case "DOWN" -> queue = grid.getQueue(r + 1, c, "UP");
-            case "LEFT" -> queue = grid.getQueue(r, c - 1, "RIGHT");
-            case "RIGHT" -> queue = grid.getQueue(r, c + 1, "LEFT");
-            default -> throw new IllegalArgumentException("Invalid port: " + port);
+    }
+
+    /**
+     * Scans the network until it finds every silo settled and two scans
+     * in a row agree, so silos finishing a port operation are not caught
+     * half way. The phase is the one beginning, or -1 outside of a cycle
+     * boundary.
+     */
+    private Checkpoint capture(int phase) {
+        Checkpoint previous = null;
+        for (int attempt = 0; ; attempt++) {
+            Checkpoint current = scan(phase);
+            if (current != null && previous != null && current.sameState(previous)) {
+                return current;
+            }
+            previous = current;
+            if (attempt < 16) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(50_000);
+            }
         }
-        queue.put(value);
     }
 
     /**
-     * The isSiloNextToStream method checks if a silo is adjacent to a stream in the specified direction.
-     * @param siloRow
-     * @param siloCol
-     * @param streamRow
-     * @param streamCol
-     * @param dir is the specified direction
+     * Copies the state of every silo and stream, or returns null if a silo
+     * is in the middle of something.
      */
-    private boolean isSiloNextToStream(int siloRow, int siloCol, int streamRow, int streamCol, String dir) {
-        switch (dir) {
-            case "UP" -> {
-                return siloRow - 1 == streamRow && siloCol == streamCol;
+    private Checkpoint scan(int phase) {
+        int numCols = grid.getNumCols();
+        Checkpoint checkpoint = new Checkpoint(grid.getNumRows(), numCols, clock.getTickCount(),
+                inputStreams.size(), outputStreams.size());
+        for (int s = 0; s < checkpoint.codes.length; s++) {
+            SiloState silo = grid.getSilo(s / numCols, s % numCols);
+            if (silo == null) {
+                checkpoint.codes[s] = "";
+                checkpoint.pendingWritePort[s] = -1;
+                continue;
             }
-            case "DOWN" -> {
-                return siloRow + 1 == streamRow && siloCol == streamCol;
+            // Read the activity first, it publishes the registers
+            int activity = silo.getActivity();
+            int port = silo.getActivityPort();
+            int value = silo.getActivityValue();
+            int index = silo.getInstructionIndex();
+            int acc = silo.getAcc();
+            int bak = silo.getBak();
+            int pendingPort = silo.getPendingWritePort();
+            int pendingValue = silo.getPendingWriteValue();
+            Program program = silo.getProgram();
+            int portIndex = routes.portIndex(s / numCols, s % numCols, port);
+            // The silo taking the checkpoint is about to start its port operation
+            boolean own = silo.isOwnThread();
+            switch (activity) {
+                case SiloState.EXECUTING -> {
+                    // Unless it is the silo arriving last, its instruction is done
+                    if (!own) {
+                        return null;
+                    }
+                }
+                case SiloState.READING -> {
+                    if (!own && canRead(portIndex)) {
+                        return null;
+                    }
+                }
+                case SiloState.READ_DONE -> {
+                    // Finish the instruction with the value that was read
+                    int op = program.op[index];
+                    int next = index + 1 >= program.length ? 0 : index + 1;
+                    if (op == Program.JRO) {
+                        next = Math.floorMod(index + value, program.length);
+                    } else if (op == Program.ADD) {
+                        acc += value;
+                    } else if (op == Program.SUB) {
+                        acc -= value;
+                    } else if (program.dstKind[index] == Program.PORT) {
+                        pendingPort = program.dst[index];
+                        pendingValue = value;
+                        next = index;
+                    } else if (program.dstKind[index] == Program.ACC) {
+                        acc = value;
+                    } else if (program.dstKind[index] == Program.BAK) {
+                        bak = value;
+                    }
+                    index = next;
+                }
+                case SiloState.WRITING -> {
+                    if (!own && (routes.writeKind(portIndex) != RoutingTable.SILO
+                            || !grid.isFull(routes.writeTarget(portIndex)))) {
+                        return null;
+                    }
+                    pendingPort = port;
+                    pendingValue = value;
+                }
+                case SiloState.WRITE_DONE -> index = index + 1 >= program.length ? 0 : index + 1;
+                case SiloState.RUNNING_AHEAD -> {
+                    // Replay the instructions it ran ahead over up to this cycle
+                    if (phase < 0) {
+                        return null;
+                    }
+                    int[] state = silo.stateAhead(phase);
+                    if (state == null) {
+                        return null;
+                    }
+                    index = state[0];
+                    acc = state[1];
+                    bak = state[2];
+                }
+                default -> {
+                    // Settled between instructions
+                }
             }
-            case "LEFT" -> {
-                return siloCol - 1 == streamCol && siloRow == streamRow;
+            checkpoint.codes[s] = silo.getCode();
+            checkpoint.instructionIndex[s] = index;
+            checkpoint.acc[s] = acc;
+            checkpoint.bak[s] = bak;
+            checkpoint.pendingWritePort[s] = pendingPort;
+            checkpoint.pendingWriteValue[s] = pendingValue;
+        }
+        for (int k = 0; k < inputStreams.size(); k++) {
+            Stream stream = inputStreams.get(k);
+            checkpoint.inputFirst[k] = stream.getCurrentIndex();
+            checkpoint.inputSourceValuesRead[k] = stream.getSourceValuesRead();
+            checkpoint.inputValues[k] = stream.toArray();
+        }
+        for (int k = 0; k < outputStreams.size(); k++) {
+            Stream stream = outputStreams.get(k);
+            checkpoint.outputValues[k] = stream.toArray();
+            checkpoint.outputFirst[k] = stream.size() - checkpoint.outputValues[k].length;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Returns whether a read from a port would get a value right away.
+     */
+    private boolean canRead(int portIndex) {
+        return switch (routes.readKind(portIndex)) {
+            case RoutingTable.SILO -> grid.isFull(routes.readTarget(portIndex));
+            case RoutingTable.INPUT -> inputs[routes.readTarget(portIndex)].canTake();
+            default -> false;
+        };
+    }
+
+    /**
+     * The restore method puts a network that has its silos created but not
+     * started into the state of a checkpoint. The network has to be built
+     * from the same input file, so the streams line up and file backed
+     * input streams can skip what was already read.
+     * @throws IllegalArgumentException if the checkpoint does not fit the network
+     */
+    public synchronized void restore(Checkpoint checkpoint) throws IOException {
+        int numCols = grid.getNumCols();
+        if (checkpoint.numRows != grid.getNumRows() || checkpoint.numCols != numCols
+                || checkpoint.inputValues.length != inputStreams.size()
+                || checkpoint.outputValues.length != outputStreams.size()) {
+            throw new IllegalArgumentException("The checkpoint was taken from a different network");
+        }
+        for (int s = 0; s < checkpoint.codes.length; s++) {
+            SiloState silo = grid.getSilo(s / numCols, s % numCols);
+            if (silo == null) {
+                throw new IllegalArgumentException("Silo " + s / numCols + "," + s % numCols + " has not been created");
             }
-            case "RIGHT" -> {
-                return siloCol + 1 == streamCol && siloRow == streamRow;
+            silo.restore(checkpoint.codes[s], checkpoint.instructionIndex[s], checkpoint.acc[s], checkpoint.bak[s],
+                    checkpoint.pendingWritePort[s], checkpoint.pendingWriteValue[s]);
+        }
+        for (int k = 0; k < inputStreams.size(); k++) {
+            inputStreams.get(k).restore(checkpoint.inputFirst[k], checkpoint.inputValues[k],
+                    checkpoint.inputSourceValuesRead[k]);
+        }
+        for (int k = 0; k < outputStreams.size(); k++) {
+            outputStreams.get(k).restore(checkpoint.outputFirst[k], checkpoint.outputValues[k], 0);
+        }
+        clock.setTickCount(checkpoint.cycle);
+        deadlock.set(null);
+    }
+
+    /**
+     * The snapshotMetrics method reads the counters of every silo and
+     * stream. Silos count on their own thread without synchronization, so
+     * a snapshot taken while the network runs may be a few instructions
+     * behind, but taking one never slows the silos down.
+     */
+    public MetricsSnapshot snapshotMetrics() {
+        return new MetricsSnapshot(this, grid.getNumRows(), grid.getNumCols());
+    }
+
+    /**
+     * Registers a NetworkMetricsMXBean for this network with the platform
+     * MBeanServer, so it can be watched with JConsole or another JMX
+     * client, and returns its name.
+     */
+    public synchronized ObjectName registerMBean() {
+        if (mbeanName == null) {
+            try {
+                ObjectName name = new ObjectName("assemblysilos:type=SiloNetwork,name=network-"
+                        + networkIds.incrementAndGet());
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new NetworkMetrics(this), name);
+                mbeanName = name;
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not register network metrics", e);
             }
-            default -> throw new IllegalArgumentException("Invalid direction: " + dir);
         }
+        return mbeanName;
     }
 
+    /**
+     * Removes the MBean registered by registerMBean, if there is one.
+     */
+    public synchronized void unregisterMBean() {
+        if (mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch (JMException e) {
+                System.out.println("Could not unregister network metrics: " + e.getMessage());
+            }
+            mbeanName = null;
+        }
+    }
 
     public List<Stream> getInputStreams() {
         return inputStreams;
@@ -194,14 +766,25 @@ public class SiloNetwork {
     }
 
     /**
-     * The stopStreams method stops all input and output streams.
+     * The stopStreams method stops all input and output streams and closes
+     * the files they were reading from or writing to.
      */
     public void stopStreams() {
         for (Stream inputStream : inputStreams) {
             inputStream.kill();
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                System.out.println("Could not close input stream: " + e.getMessage());
+            }
         }
         for (Stream outputStream : outputStreams) {
             outputStream.kill();
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                System.out.println("Could not close output stream: " + e.getMessage());
+            }
         }
     }
 }
\ No newline at end of file
@@ -1,10 +1,8 @@
 package network;
 
-import gui.SiloGraphic;
-import commands.Instruction;
-import javafx.application.Platform;
-import java.util.List;
+import java.util.Arrays;
 import java.util.concurrent.Phaser;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
@@ -13,10 +11,30 @@ import java.util.concurrent.Phaser;
  * the state of an individual silo in the SiloNetwork. The state includes
  * various attributes like accumulator (acc), backup (bak), instructionIndex,
  * row, column, and a reference to the SiloNetwork it belongs to. A Phaser is
- * used for synchronizing the operation of silos. The class also has a
- * SiloGraphic for handling the graphical representation of the silo.
+ * used for synchronizing the operation of silos. Changes are reported to a
+ * SiloListener, which the GUI uses for the graphical representation of the
+ * silo. The class itself does not depend on JavaFX, so a network can run
+ * headless.
  */
 public class SiloState  {
+    /**
+     * The modes a silo can be in, as shown in the MODE box of the GUI.
+     */
+    public enum Mode {
+        IDLE,
+        READ,
+        WRITE
+    }
+
+    // What the silo's thread is doing, published for checkpoints and reset
+    static final int EXECUTING = 0;
+    static final int SETTLED = 1;
+    static final int READING = 2;
+    static final int READ_DONE = 3;
+    static final int WRITING = 4;
+    static final int WRITE_DONE = 5;
+    static final int RUNNING_AHEAD = 6;
+
     private int acc;
     private int bak;
     private int instructionIndex;
@@ -24,14 +42,55 @@ public class SiloState  {
     private final int col;
     private final SiloNetwork network;
     private final Phaser phaser;
-    private final SiloGraphic siloGraphic;
+    private SiloListener listener = SiloListener.NONE;
+    private final SiloMetrics metrics = new SiloMetrics();
+    private String code = "";
+
+    // Display state, sampled by the GUI once per frame
+    private Mode mode = Mode.IDLE;
+    private int readMask;
+    private int writeMask;
+    private final int[] transferValues = new int[Port.COUNT];
+
+    // Set before activity, so reading activity first makes them visible
+    private volatile int activity = SETTLED;
+    private int activityPort;
+    private int activityValue;
+    private int pendingWritePort = -1;
+    private int pendingWriteValue;
+
+    // Set by a reset to release the silo from a port operation
+    private static final int NO_ABORT = 0;
+    private static final int ABORT_REQUESTED = 1;
+    private static final int ABORT_DELIVERED = 2;
+    private volatile int abort = NO_ABORT;
+    // Whether the silo is a party of the phaser outside of port operations
+    private boolean registered = true;
+    // Whether the silo has not been started since it was created or reset,
+    // and whether it was then found to be idle, see startSilo
+    private boolean fresh = true;
+    private boolean idle;
+    // The code the interpreter's program was compiled from, see startSilo
+    private String startedCode;
+    private boolean threadStarted;
+
+    // Where the silo started running ahead, see RunAheadSchedule. Set
+    // before activity, like the activity fields.
+    private int aheadPhase;
+    private int wakePhase;
+    // The run ahead the silo is in, null while its registers are up to date
+    private volatile AheadRun ahead;
+    // Cycles arrived for, counted by the schedule while the silo sleeps
+    private int aheadArrivals;
+    private volatile boolean asleep;
 
     private final Interpreter interpreter;
     private final Thread thread;
 
     /**
-     * The constructor creates a silo by initializing the
-     * attributes and starting the interpreter thread.
+     * The constructor creates a silo by initializing the attributes and
+     * creating the interpreter thread, which is started the first time the
+     * silo has a program to run.
      * @param network The network that this silo is a part of.
      * @param row The row of the silo.
      * @param col The column of the silo.
@@ -45,146 +104,572 @@ public class SiloState  {
         phaser = network.getPhaser();
         this.network = network;
 
-        siloGraphic = new SiloGraphic();
-
         interpreter = new Interpreter(this);
-        thread = new Thread(interpreter);
+        thread = network.newSiloThread(interpreter);
+    }
+
+    /**
+     * Sets the SiloListener that is notified of changes to this silo.
+     * Passing null restores the no-op listener.
+     */
+    public void setListener(SiloListener listener) {
+        this.listener = listener == null ? SiloListener.NONE : listener;
+    }
+
+    /**
+     * Returns the counters of this silo, which are updated by its own
+     * interpreter thread.
+     */
+    public SiloMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The setCode and getCode methods set and return the program text the
+     * silo compiles when it is started.
+     */
+    public void setCode(String code) {
+        this.code = code == null ? "" : code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * The instructionStarted and instructionFinished methods are called by
+     * the interpreter around every instruction, instructionCancelled when
+     * the silo was paused before the instruction began. The silo counts as
+     * settled again once it has arrived at the barrier.
+     */
+    void instructionStarted() {
+        activity = EXECUTING;
+    }
+
+    void instructionFinished() {
+        metrics.instructionRetired();
+    }
+
+    void instructionCancelled() {
+        activity = SETTLED;
+    }
+
+    /**
+     * Returns the ProgramCompiler of the network, or null if programs are
+     * only interpreted.
+     */
+    ProgramCompiler getProgramCompiler() {
+        return network.getProgramCompiler();
+    }
+
+    /**
+     * The getActivity, getActivityPort and getActivityValue methods tell a
+     * checkpoint what the silo is doing: which port it reads from or writes
+     * to and the value read or being written.
+     */
+    int getActivity() {
+        return activity;
+    }
+
+    int getActivityPort() {
+        return activityPort;
+    }
+
+    int getActivityValue() {
+        return activityValue;
+    }
 
-        thread.start();
+    Thread getThread() {
+        return thread;
     }
 
     /**
-     * Returns the SiloGraphic object associated with the SiloState.
+     * Returns whether the calling thread is the silo's own thread, which
+     * happens when the silo completes a cycle by leaving the barrier for a
+     * port operation it has not started yet.
      */
-    public SiloGraphic getSiloGraphic() {
-        return siloGraphic;
+    boolean isOwnThread() {
+        return thread == Thread.currentThread();
+    }
+
+    /**
+     * The restore method puts the silo into a state saved in a Checkpoint,
+     * before it is started. A pendingWritePort other than -1 means the silo
+     * was writing pendingWriteValue when the checkpoint was taken, and it
+     * finishes that write before executing anything else.
+     */
+    void restore(String code, int instructionIndex, int acc, int bak, int pendingWritePort, int pendingWriteValue) {
+        setCode(code);
+        this.instructionIndex = instructionIndex;
+        setAcc(acc);
+        setBak(bak);
+        this.pendingWritePort = pendingWritePort;
+        this.pendingWriteValue = pendingWriteValue;
+    }
+
+    /**
+     * Returns whether the silo has a write left over from a checkpoint.
+     */
+    boolean hasPendingWrite() {
+        return pendingWritePort >= 0;
+    }
+
+    int getPendingWritePort() {
+        return pendingWritePort;
+    }
+
+    int getPendingWriteValue() {
+        return pendingWriteValue;
+    }
+
+    /**
+     * Finishes the write left over from a checkpoint.
+     */
+    void writePendingValue() throws InterruptedException {
+        int port = pendingWritePort;
+        pendingWritePort = -1;
+        writeToPort(port, pendingWriteValue);
+    }
+
+    /**
+     * Thrown out of a port operation released by abortPortOperation. The
+     * interpreter drops the instruction and skips the barrier.
+     */
+    static final class PortOperationAborted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        PortOperationAborted() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The abortPortOperation method releases the silo from the port
+     * operation it is blocked in, as when the network is reset. The silo
+     * gives up its instruction and parks until it is started again, which
+     * clearAbort records. The interrupt wakes the silo wherever it waits.
+     */
+    void abortPortOperation() {
+        abort = ABORT_REQUESTED;
+        thread.interrupt();
+        abort = ABORT_DELIVERED;
+    }
+
+    boolean isAbortRequested() {
+        return abort != NO_ABORT;
+    }
+
+    /**
+     * Called by the interpreter before it parks. Clears an abort request
+     * along with its interrupt, once the interrupt has been sent, so no
+     * interrupt is left over to disturb a later port operation.
+     */
+    void clearAbort() {
+        if (abort != NO_ABORT) {
+            while (abort == ABORT_REQUESTED) {
+                Thread.yield();
+            }
+            abort = NO_ABORT;
+        }
+        Thread.interrupted();
+    }
+
+    /**
+     * Leaves an aborted port operation: the silo takes part in the cycles
+     * again, but the instruction is not finished.
+     */
+    private void abandonPortOperation() {
+        phaser.register();
+        activity = SETTLED;
+        throw new PortOperationAborted();
+    }
+
+    /**
+     * Returns the compiled program the silo is running, or null if it has
+     * not been started.
+     */
+    Program getProgram() {
+        return interpreter.getProgram();
     }
 
     /**
      * Waits for all silos to reach a synchronization point.
      */
     public void waitForSynchronization() {
-        phaser.arriveAndAwaitAdvance();
+        long start = System.nanoTime();
+        int phase = phaser.arrive();
+        network.getRunAheadSchedule().arriveForSleepers();
+        // Settled only after arriving, so a reset can count the silos at the barrier
+        activity = SETTLED;
+        phaser.awaitAdvance(phase);
+        metrics.cycleCompleted(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns whether the silo may run ahead of the others. Only while the
+     * clock is unthrottled, where the GUI samples the registers once per
+     * frame anyway: a silo running ahead shows the registers of the last
+     * instruction it ran ahead to for the cycles it sleeps.
+     */
+    boolean canRunAhead() {
+        return network.isRunAhead() && network.getClock().isUnthrottled();
+    }
+
+    /**
+     * The runAhead method is called by the interpreter after it has
+     * executed the given number of port free instructions at once, with the
+     * index and registers they end with. The silo takes part in the first
+     * cycle itself and sleeps through the others, see RunAheadSchedule, so
+     * it is back at the barrier when the instruction at endIndex is due.
+     * Until then its registers are replayed up to the cycle the network is
+     * in whenever they are read. Paused while asleep, it goes back to the
+     * instruction it had reached in the last cycle it took part in. Woken
+     * early to keep the clock going, it goes back there as well and steps
+     * through the rest one cycle at a time.
+     * @param registers ACC, BAK and the ordinal of the last Mode set, or -1
+     */
+    void runAhead(int startIndex, int cycles, int endIndex, int[] registers) {
+        if (cycles == 1) {
+            publish(endIndex, registers);
+            instructionFinished();
+            waitForSynchronization();
+            return;
+        }
+        long start = System.nanoTime();
+        aheadArrivals = 1;
+        // Still a party that has not arrived, so the phase cannot change here
+        aheadPhase = phaser.getPhase();
+        wakePhase = (aheadPhase + cycles) & Integer.MAX_VALUE;
+        AheadRun run = new AheadRun(getProgram(), startIndex, acc, bak, aheadPhase, cycles);
+        ahead = run;
+        activity = RUNNING_AHEAD;
+
+        RunAheadSchedule schedule = network.getRunAheadSchedule();
+        schedule.add(this);
+        phaser.arrive();
+        schedule.arriveForSleepers();
+        while (asleep) {
+            if (!interpreter.isRunning()) {
+                schedule.remove(this);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+
+        int arrivals = aheadArrivals;
+        int lastPhase = (aheadPhase + arrivals - 1) & Integer.MAX_VALUE;
+        if (arrivals < cycles || !interpreter.isRunning()) {
+            rollBack(run, arrivals);
+        } else {
+            publish(endIndex, registers);
+            metrics.instructionsRetired(cycles);
+        }
+        ahead = null;
+        activity = SETTLED;
+        // Woken while the last cycle it arrived for is still completing, wait until it has
+        phaser.awaitAdvance(lastPhase);
+        metrics.cyclesCompleted(arrivals, System.nanoTime() - start);
+        if (arrivals < cycles) {
+            stepAhead(run.program, cycles - arrivals);
+        }
+    }
+
+    /**
+     * Executes the given number of port free instructions one cycle at a
+     * time, for a silo woken early to keep the clock going. Running ahead
+     * again would execute them all once more in every cycle, as long as
+     * only sleeping silos are left. Stops before the next one once paused,
+     * like the interpreter.
+     */
+    private void stepAhead(Program program, int count) {
+        long start = System.nanoTime();
+        RunAheadSchedule schedule = network.getRunAheadSchedule();
+        int[] registers = {acc, bak, -1};
+        int index = instructionIndex;
+        int done = 0;
+        for (; done < count; done++) {
+            activity = EXECUTING;
+            if (!interpreter.isRunning()) {
+                activity = SETTLED;
+                break;
+            }
+            index = Interpreter.executeLocal(program, index, registers);
+            publish(index, registers);
+            registers[2] = -1;
+            int phase = phaser.arrive();
+            schedule.arriveForSleepers();
+            activity = SETTLED;
+            phaser.awaitAdvance(phase);
+        }
+        metrics.instructionsRetired(done);
+        metrics.cyclesCompleted(done, System.nanoTime() - start);
+    }
+
+    /**
+     * Sets the registers and instruction index the silo had after the given
+     * number of the instructions it ran ahead.
+     */
+    private void rollBack(AheadRun run, int count) {
+        int[] registers = {0, 0, -1};
+        int index = run.replay(count, registers);
+        publish(index, registers);
+        metrics.instructionsRetired(count);
+    }
+
+    private void publish(int index, int[] registers) {
+        instructionIndex = index;
+        if (acc != registers[0]) {
+            setAcc(registers[0]);
+        }
+        if (bak != registers[1]) {
+            setBak(registers[1]);
+        }
+        if (registers[2] >= 0) {
+            setMode(registers[2] == Mode.IDLE.ordinal() ? Mode.IDLE : Mode.WRITE);
+        }
+    }
+
+    /**
+     * Returns the instruction index, ACC and BAK of a silo running ahead as
+     * they are when the given phase begins, for a checkpoint, or null if
+     * it has just stopped running ahead.
+     */
+    int[] stateAhead(int phase) {
+        AheadRun run = ahead;
+        if (run == null) {
+            return null;
+        }
+        int[] registers = {0, 0, -1};
+        int index = run.replay(Math.min(RunAheadSchedule.distance(run.phase, phase), run.cycles), registers);
+        return new int[] {index, registers[0], registers[1]};
+    }
+
+    /**
+     * Returns the instruction index, ACC and BAK of a silo running ahead as
+     * they are in the cycle the network is in, once it has executed its
+     * instruction of that cycle, as every silo at the barrier has.
+     */
+    private int[] stateNow(AheadRun run) {
+        int count = Math.min(RunAheadSchedule.distance(run.phase, phaser.getPhase()) + 1, run.cycles);
+        int[] registers = {0, 0, -1};
+        int index = run.replay(count, registers);
+        return new int[] {index, registers[0], registers[1]};
+    }
+
+    /**
+     * An AheadRun is where a silo started running ahead and for how many
+     * cycles, so its registers in any of them can be replayed.
+     */
+    private static final class AheadRun {
+        private final Program program;
+        private final int index;
+        private final int acc;
+        private final int bak;
+        private final int phase;
+        private final int cycles;
+
+        AheadRun(Program program, int index, int acc, int bak, int phase, int cycles) {
+            this.program = program;
+            this.index = index;
+            this.acc = acc;
+            this.bak = bak;
+            this.phase = phase;
+            this.cycles = cycles;
+        }
+
+        /**
+         * Executes the first count instructions of the run on the
+         * registers, see Interpreter.executeLocal, and returns the index of
+         * the next one.
+         */
+        int replay(int count, int[] registers) {
+            registers[0] = acc;
+            registers[1] = bak;
+            int next = index;
+            for (int i = 0; i < count; i++) {
+                next = Interpreter.executeLocal(program, next, registers);
+            }
+            return next;
+        }
     }
 
     /**
-     * reads from a specified port
-     * @param port The port to read from.
+     * The setAsleep, getAheadPhase, getWakePhase and proxyArrived methods
+     * are used by the RunAheadSchedule, under its lock.
+     */
+    void setAsleep(boolean asleep) {
+        this.asleep = asleep;
+    }
+
+    int getAheadPhase() {
+        return aheadPhase;
+    }
+
+    int getWakePhase() {
+        return wakePhase;
+    }
+
+    void proxyArrived() {
+        aheadArrivals++;
+    }
+
+    /**
+     * reads from a port given by its Port id
+     * @param port The id of the port to read from.
      * @return The value read from the port.
      */
-    public int readFromPort(String port) {
-        Platform.runLater(() -> siloGraphic.setModeVariable("READ"));
+    public int readFromPort(int port) {
+        activityPort = port;
+        activity = READING;
+        setMode(Mode.READ);
         phaser.arriveAndDeregister();
-        Platform.runLater(() -> siloGraphic.setTransferLabelVisible(port, true));
+        network.getRunAheadSchedule().arriveForSleepers();
+        readMask |= 1 << port;
+        listener.readStarted(port);
+        EngineClock clock = network.getClock();
+        long startTick = clock.getTickCount();
+        long start = System.nanoTime();
         int value = network.receiveValue(row, col, port);
+        if (abort != NO_ABORT) {
+            abandonPortOperation();
+        }
+        metrics.readCompleted(clock.getTickCount() - startTick, System.nanoTime() - start);
+        activityValue = value;
+        activity = READ_DONE;
         phaser.register();
+        activity = EXECUTING;
         return value;
     }
 
     /**
-     * writes to a specified port
-     * @param port The port to write to.
+     * writes to a port given by its Port id
+     * @param port The id of the port to write to.
      * @param value The value to write.
      * @throws InterruptedException If the thread is interrupted.
      */
-    public void writeToPort(String port, int value) throws InterruptedException {
-        Platform.runLater(() -> {
-            siloGraphic.setModeVariable("WRITE");
-            siloGraphic.updateTransferValue(value, port);
-            siloGraphic.setTransferLabelVisible(port,true); // Make the TransferLabel visible
-        });
+    public void writeToPort(int port, int value) throws InterruptedException {
+        activityPort = port;
+        activityValue = value;
+        activity = WRITING;
+        setMode(Mode.WRITE);
+        transferValues[port] = value;
+        writeMask |= 1 << port;
+        listener.writeStarted(port, value);
         phaser.arriveAndDeregister();
+        network.getRunAheadSchedule().arriveForSleepers();
 
-        network.sendValue(row, col, port, value);
+        EngineClock clock = network.getClock();
+        long startTick = clock.getTickCount();
+        long start = System.nanoTime();
+        try {
+            network.sendValue(row, col, port, value);
+        } catch (InterruptedException e) {
+            if (abort == NO_ABORT) {
+                throw e;
+            }
+        }
+        if (abort != NO_ABORT) {
+            abandonPortOperation();
+        }
+        metrics.writeCompleted(clock.getTickCount() - startTick, System.nanoTime() - start);
+        activity = WRITE_DONE;
 
         phaser.register();
-        Platform.runLater(() -> {
-            siloGraphic.setModeVariable("IDLE");
-            siloGraphic.setTransferLabelVisible(port,false); // Hide the TransferLabel
-        });
-    }
-
-    /**
-     *  Method checks if a given key is a valid register (ACC or BAK).
-     * @param key The key to check.
-     * @return True if the key is a register, false otherwise.
-     */
-    public boolean isRegister(String key) {
-        return key.equalsIgnoreCase("ACC") || key.equalsIgnoreCase("NIL") || key.equalsIgnoreCase("BAK");
-    }
-
-    /**
-     * The isPort method checks if a given key is a valid port (UP, DOWN, LEFT, or RIGHT).
-     * @param key The key to check.
-     * @return True if the key is a port, false otherwise.
-     */
-    public boolean isPort(String key) {
-        return key.equals("UP") || key.equals("DOWN") || key.equals("LEFT") || key.equals("RIGHT");
+        activity = EXECUTING;
+        setMode(Mode.IDLE);
+        writeMask &= ~(1 << port);
+        listener.writeFinished(port);
     }
 
     /**
      * The getRegisterValue and setRegisterValue methods are used to access
-     * and modify the values of the ACC and BAK registers.
-     * @param key
-     * @return
+     * and modify the values of the ACC and BAK registers, given by their
+     * compiled operand kind: Program.ACC, Program.BAK or Program.NIL.
      */
-    public int getRegisterValue(String key) {
-        switch (key) {
-            case "ACC" -> {
+    public int getRegisterValue(int register) {
+        switch (register) {
+            case Program.ACC -> {
                 return acc;
             }
-            case "BAK" -> {
+            case Program.BAK -> {
                 return bak;
             }
-            case "NIL" -> {
+            case Program.NIL -> {
                 return 0;
             }
         }
-        throw new IllegalArgumentException("Invalid register: " + key);
+        throw new IllegalArgumentException("Invalid register: " + register);
     }
 
-    public void setRegisterValue(String key, int value) {
-        Platform.runLater(() -> siloGraphic.setModeVariable("WRITE"));
-        if (key.equalsIgnoreCase("ACC")) {
-            setAcc(value);
-        } else if (key.equalsIgnoreCase("BAK")) {
-            setBak(value);
-        } else if (key.equalsIgnoreCase("NIL")) {
-            // Do nothing
-        } else {
-            throw new IllegalArgumentException("Invalid register: " + key);
+    public void setRegisterValue(int register, int value) {
+        setMode(Mode.WRITE);
+        switch (register) {
+            case Program.ACC -> setAcc(value);
+            case Program.BAK -> setBak(value);
+            case Program.NIL -> {
+                // Do nothing
+            }
+            default -> throw new IllegalArgumentException("Invalid register: " + register);
         }
     }
 
     /**
-     * The noopMethod is a no-operation method, setting the SiloGraphic mode to "IDLE".
+     * The noopMethod is a no-operation method, setting the silo mode to IDLE.
      */
     public void noopMethod() {
-        Platform.runLater(() -> siloGraphic.setModeVariable("IDLE"));
+        setMode(Mode.IDLE);
+    }
+
+    private void setMode(Mode mode) {
+        this.mode = mode;
+        listener.modeChanged(mode);
+    }
+
+    /**
+     * The getMode, getReadMask, getWriteMask and getTransferValue methods
+     * expose what the silo is doing, so the GUI can sample it once per frame.
+     * Bit n of the read and write masks is set while the silo reads from or
+     * writes to the port with id n.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getReadMask() {
+        return readMask;
+    }
+
+    public int getWriteMask() {
+        return writeMask;
+    }
+
+    public int getTransferValue(int port) {
+        return transferValues[port];
     }
 
     /**
      * The getAcc, setAcc, getBak, and setBak methods are used to get and set the values
-     * of the accumulator and backup registers, respectively.
+     * of the accumulator and backup registers, respectively. While the silo
+     * runs ahead, the getters return the registers of the current cycle.
      */
     public int getAcc() {
-        Platform.runLater(() -> siloGraphic.setAccVariable(acc));
-        return acc;
+        AheadRun run = ahead;
+        return run == null ? acc : stateNow(run)[1];
     }
 
     public void setAcc(int acc) {
-        Platform.runLater(() -> siloGraphic.setAccVariable(acc));
         this.acc = acc;
+        listener.accChanged(acc);
     }
 
     public int getBak() {
-        Platform.runLater(() -> siloGraphic.setBakVariable(bak));
-        return bak;
+        AheadRun run = ahead;
+        return run == null ? bak : stateNow(run)[2];
     }
 
     public void setBak(int bak) {
-        Platform.runLater(() -> siloGraphic.setBakVariable(bak));
         this.bak = bak;
+        listener.bakChanged(bak);
     }
 
     /**
@@ -192,7 +677,8 @@ public class SiloState  {
      * access and modify the instruction index.
      */
     public int getInstructionIndex() {
-        return instructionIndex;
+        AheadRun run = ahead;
+        return run == null ? instructionIndex : stateNow(run)[0];
     }
 
     public void setInstructionIndex(int instructionIndex) {
@@ -205,40 +691,83 @@ public class SiloState  {
      * its interpreter.
      */
     public void step() {
-        interpreter.setStep(true);
+        if (threadStarted && !idle) {
+            interpreter.setStep(true);
+        }
     }
 
     public void pause() {
         interpreter.setRunning(false);
+        interpreter.setStep(false);
     }
 
     public void reset() {
         interpreter.setRunning(false);
+        fresh = true;
         instructionIndex = 0;
+        pendingWritePort = -1;
         setAcc(0);
         setBak(0);
-
-        siloGraphic.setTransferLabelVisible("UP", false);
-        siloGraphic.setTransferLabelVisible("DOWN", false);
-        siloGraphic.setTransferLabelVisible("LEFT", false);
-        siloGraphic.setTransferLabelVisible("RIGHT", false);
+        setMode(Mode.IDLE);
+        readMask = 0;
+        writeMask = 0;
+        Arrays.fill(transferValues, 0);
+        listener.transfersCleared();
     }
 
     public int getInstructionSize() {
         return interpreter.getInstructionSize();
     }
 
-    public void startSilo() {
-        String code = siloGraphic.getCodeArea();
-        //if code is empty deregister the phaser
-        if (code.isEmpty()) {
-            interpreter.kill();
+    /**
+     * The leaveIfIdle method decides, when the silo is started for the
+     * first time since it was created or reset, whether it is idle: it has
+     * no code, or its code can never use a port or change a register from
+     * where it starts, see Program.isIdleFrom. An idle silo leaves the
+     * phaser and never runs, so its thread is not even started, and it
+     * stays idle until the network is reset. It still shows its registers,
+     * and to its neighbours it is a silo that never reads or writes.
+     */
+    void leaveIfIdle() {
+        if (!fresh) {
+            return;
+        }
+        // Not arrived at the barrier yet, so the silo can leave it here
+        fresh = false;
+        Program program = code.isEmpty() ? null : network.getProgramCache().get(code);
+        idle = program == null
+                || pendingWritePort < 0 && mode == Mode.IDLE && program.isIdleFrom(instructionIndex);
+        interpreter.setProgram(program);
+        startedCode = code;
+        if (idle && registered) {
+            registered = false;
             phaser.arriveAndDeregister();
-        } else {
-            Parser parser = new Parser();
-            List<Instruction> instructions = parser.parse(code);
-            interpreter.setInstructions(instructions);
-            interpreter.setRunning(true);
+            network.getRunAheadSchedule().arriveForSleepers();
+        }
+    }
+
+    boolean isIdle() {
+        return idle;
+    }
+
+    public void startSilo() {
+        leaveIfIdle();
+        if (idle) {
+            return;
+        }
+        // A resume only replaces the program if the code was edited while the silo was paused
+        if (!code.equals(startedCode)) {
+            interpreter.setProgram(network.getProgramCache().get(code));
+            startedCode = code;
+        }
+        if (!registered) {
+            registered = true;
+            phaser.register();
+        }
+        interpreter.setRunning(true);
+        if (!threadStarted) {
+            threadStarted = true;
+            thread.start();
         }
     }
 
@@ -0,0 +1,341 @@
+package network;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * A SiloStepper executes the instructions of the silos kept in SiloArrays,
+ * one silo and one cycle at a time, for the LockstepEngine and for every
+ * worker of the TiledEngine.
+ *
+ * Port transfers follow the handoff rules described in LockstepEngine: a
+ * value posted to a cell during a cycle can only be taken in a later
+ * cycle, and a writer only notices the take in a later cycle. The engines
+ * subclass it to watch what the silos do, for traces and fast forward, or
+ * to send transfers across a tile boundary instead of using the cell. The
+ * methods they override do nothing, or use the cells directly, by default.
+ */
+class SiloStepper {
+    static final long STALL = Long.MIN_VALUE;
+
+    private static final int RUNNING = SiloArrays.RUNNING;
+    private static final int WRITING = SiloArrays.WRITING;
+    private static final int HALTED = SiloArrays.HALTED;
+    private static final int BATCH_SIZE = 4096;
+
+    final SiloArrays silos;
+    private final Program[] programs;
+    private final RoutingTable routes;
+    private final int[] acc;
+    private final int[] bak;
+    private final int[] pc;
+    private final int[] status;
+    private final int[] writeCell;
+    private final int[] busy;
+    final int[] cellValue;
+    final boolean[] cellFull;
+    final long[] postCycle;
+    final long[] takeCycle;
+    // Silos that could not do anything since the engine last cleared it
+    int stalls;
+    private int[] batch;
+
+    SiloStepper(SiloArrays silos) {
+        this.silos = silos;
+        programs = silos.programs;
+        routes = silos.routes;
+        acc = silos.acc;
+        bak = silos.bak;
+        pc = silos.pc;
+        status = silos.status;
+        writeCell = silos.writeCell;
+        busy = silos.busy;
+        cellValue = silos.cellValue;
+        cellFull = silos.cellFull;
+        postCycle = silos.postCycle;
+        takeCycle = silos.takeCycle;
+    }
+
+    /**
+     * Executes cycle t on silo s, counting it in stalls if it could not do
+     * anything.
+     */
+    final void stepSilo(int s, long t) {
+        if (busy[s] != 0) {
+            busy[s]--;
+            return;
+        }
+        int state = status[s];
+        if (state == WRITING) {
+            if (isTaken(s, writeCell[s], t)) {
+                status[s] = RUNNING;
+                advance(s);
+            } else {
+                stalls++;
+            }
+            return;
+        } else if (state == HALTED) {
+            stalls++;
+            return;
+        }
+
+        Program program = programs[s];
+        int i = pc[s];
+        switch (program.op[i]) {
+            case Program.NOOP -> advance(s);
+            case Program.MOVE -> {
+                long value = read(s, program.srcKind[i], program.src[i], t);
+                if (value != STALL) {
+                    write(s, program.dstKind[i], program.dst[i], (int) value, t);
+                }
+            }
+            case Program.SWAP -> {
+                int temp = acc[s];
+                acc[s] = bak[s];
+                bak[s] = temp;
+                advance(s);
+            }
+            case Program.SAVE -> {
+                bak[s] = acc[s];
+                advance(s);
+            }
+            case Program.ADD, Program.SUB -> {
+                long value = read(s, program.srcKind[i], program.src[i], t);
+                if (value != STALL) {
+                    acc[s] = program.op[i] == Program.ADD ? acc[s] + (int) value : acc[s] - (int) value;
+                    advance(s);
+                }
+            }
+            case Program.NEGATE -> {
+                acc[s] = -acc[s];
+                advance(s);
+            }
+            case Program.MOVE_ADD, Program.MOVE_SUB -> {
+                long value = read(s, program.srcKind[i], program.src[i], t);
+                if (value != STALL) {
+                    acc[s] = (int) value;
+                    int operand = (int) read(s, program.dstKind[i], program.dst[i], t);
+                    acc[s] = program.op[i] == Program.MOVE_ADD ? acc[s] + operand : acc[s] - operand;
+                    advance(s);
+                }
+            }
+            case Program.JUMP -> jump(s, program.src[i]);
+            case Program.JEZ, Program.JNZ, Program.JGZ, Program.JLZ -> {
+                jumped(s, program.op[i], acc[s]);
+                if (jumps(program.op[i], acc[s])) {
+                    jump(s, program.src[i]);
+                } else {
+                    advance(s);
+                }
+            }
+            case Program.JRO -> {
+                long value = read(s, program.srcKind[i], program.src[i], t);
+                if (value != STALL) {
+                    jumped(s, Program.JRO, (int) value);
+                    jump(s, Math.floorMod(i + (int) value, program.length));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a conditional jump is taken with the given ACC.
+     */
+    static boolean jumps(int op, int acc) {
+        return switch (op) {
+            case Program.JEZ -> acc == 0;
+            case Program.JNZ -> acc != 0;
+            case Program.JGZ -> acc > 0;
+            default -> acc < 0;
+        };
+    }
+
+    /**
+     * The advance and jump methods move a silo on once its instruction is
+     * done, idling it for the extra cycles the instruction accounts for.
+     */
+    private void advance(int s) {
+        Program program = programs[s];
+        int i = pc[s];
+        busy[s] = program.cost[i] - 1;
+        pc[s] = i + 1 >= program.length ? 0 : i + 1;
+    }
+
+    private void jump(int s, int target) {
+        busy[s] = programs[s].jumpCost[pc[s]] - 1;
+        pc[s] = target;
+    }
+
+    /**
+     * Reads an operand, returning STALL when a port has nothing to offer
+     * yet. Values posted by a neighbour during this cycle are not visible.
+     * Reading from a port with nothing behind it halts the silo.
+     */
+    private long read(int s, int kind, int operand, long t) {
+        switch (kind) {
+            case Program.LITERAL -> {
+                return operand;
+            }
+            case Program.ACC -> {
+                return acc[s];
+            }
+            case Program.BAK -> {
+                return bak[s];
+            }
+            case Program.NIL -> {
+                return 0;
+            }
+        }
+        int port = s * 4 + operand;
+        switch (routes.readKind(port)) {
+            case RoutingTable.INPUT -> {
+                int k = routes.readTarget(port);
+                IntRingBuffer input = silos.inputStreams.get(k);
+                if (input.isEmpty() && !refill(k)) {
+                    return stall(s, operand);
+                }
+                int value = input.remove();
+                inputTaken(k, value);
+                return value;
+            }
+            case RoutingTable.SILO -> {
+                if (cellFull[port] && postCycle[port] < t) {
+                    cellFull[port] = false;
+                    takeCycle[port] = t;
+                    took(s, operand, t);
+                    return cellValue[port];
+                }
+                return stall(s, operand);
+            }
+            default -> {
+                status[s] = HALTED;
+                return STALL;
+            }
+        }
+    }
+
+    private long stall(int s, int port) {
+        stalls++;
+        stalledOnRead(s, port);
+        return STALL;
+    }
+
+    /**
+     * Pulls the next batch of an input stream from its source, returning
+     * false if there is nothing left to read.
+     */
+    private boolean refill(int k) {
+        IntSource source = silos.inputSources.get(k);
+        if (source == null) {
+            return false;
+        }
+        if (batch == null) {
+            batch = new int[BATCH_SIZE];
+        }
+        try {
+            int count = source.read(batch, 0, batch.length);
+            if (count <= 0) {
+                source.close();
+                silos.inputSources.set(k, null);
+                return false;
+            }
+            IntRingBuffer input = silos.inputStreams.get(k);
+            for (int i = 0; i < count; i++) {
+                input.add(batch[i]);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a value to an operand. Writing to a neighbouring silo posts
+     * the value and leaves the silo waiting until it has been taken.
+     * Writing off the grid halts the silo, just like the exception that
+     * ends an Interpreter thread in the same situation.
+     */
+    private void write(int s, int kind, int operand, int value, long t) {
+        switch (kind) {
+            case Program.ACC -> {
+                acc[s] = value;
+                advance(s);
+                return;
+            }
+            case Program.BAK -> {
+                bak[s] = value;
+                advance(s);
+                return;
+            }
+            case Program.NIL -> {
+                advance(s);
+                return;
+            }
+        }
+        int port = s * 4 + operand;
+        switch (routes.writeKind(port)) {
+            case RoutingTable.OUTPUT -> {
+                int k = routes.writeTarget(port);
+                outputWritten(k, value);
+                silos.emit(k, value);
+                advance(s);
+            }
+            case RoutingTable.SILO -> {
+                int cell = routes.writeTarget(port);
+                post(s, operand, cell, value, t);
+                writeCell[s] = cell;
+                status[s] = WRITING;
+            }
+            default -> status[s] = HALTED;
+        }
+    }
+
+    /**
+     * Puts the value silo s writes to the given port into the cell of the
+     * silo on the other side.
+     */
+    void post(int s, int port, int cell, int value, long t) {
+        cellValue[cell] = value;
+        cellFull[cell] = true;
+        postCycle[cell] = t;
+    }
+
+    /**
+     * Returns whether the value silo s posted to the cell has been taken
+     * before cycle t, so the silo can go on.
+     */
+    boolean isTaken(int s, int cell, long t) {
+        return !cellFull[cell] && takeCycle[cell] < t;
+    }
+
+    /**
+     * Called after silo s took the value from the cell of the given port.
+     */
+    void took(int s, int port, long t) {
+    }
+
+    /**
+     * Called when silo s has nothing to read on the given port.
+     */
+    void stalledOnRead(int s, int port) {
+    }
+
+    /**
+     * Called for every conditional jump with the ACC it tests, and every
+     * JRO with its offset, before the silo jumps.
+     */
+    void jumped(int s, int op, int value) {
+    }
+
+    /**
+     * The inputTaken and outputWritten methods are called for every value
+     * a silo takes from an input stream or writes to an output stream.
+     */
+    void inputTaken(int k, int value) {
+    }
+
+    void outputWritten(int k, int value) {
+    }
+}
@@ -1,11 +1,8 @@
 package network;
 
-import gui.StreamGraphic;
-import javafx.application.Platform;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.SynchronousQueue;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
@@ -14,82 +11,65 @@ import java.util.concurrent.SynchronousQueue;
  * can be an input stream (providing values to a silo) or an output stream
  * (receiving values from a silo). It provides methods for controlling the
  * execution of the stream, adding values to the input stream, and accessing
- * the attributes of the stream.  The class implements the Runnable interface
- * because each silo is running on a separate thread so each stream needs to
- * run on a separate thread as well.
+ * the attributes of the stream.
+ *
+ * The values are kept in an IntRingBuffer. A stream has no thread of its
+ * own: the silo next to it takes values out of the buffer or adds values to
+ * it directly when it uses the port facing the stream. A silo reading from
+ * an input stream that has not been started yet, or has run out of values,
+ * parks until a value is available.
+ *
+ * An input stream can also be backed by an IntSource, such as a file.
+ * Values are then pulled from the source a batch at a time, by the reading
+ * silo, whenever the buffer runs empty.
+ *
+ * An output stream keeps every value by default. It can instead write its
+ * values to an IntSink, such as a file, and keep only a window of the most
+ * recent values for display, so its memory use does not grow with the
+ * length of the run.
  */
 
-public class Stream implements Runnable {
+public class Stream {
+    private static final int BATCH_SIZE = 4096;
+
     private final int row;
     private final int col;
     private final boolean isInput;
-    private final List<Integer> values;
-    private int currentIndex;
-    private final StreamGraphic streamGraphic;
-    private SynchronousQueue<Integer> queue;
-    private boolean isRunning;
-    private boolean isAlive = true;
-    private Thread thread;
+    private final IntRingBuffer values = new IntRingBuffer();
+    private StreamListener listener = StreamListener.NONE;
+    private volatile boolean isRunning;
+    private volatile boolean isAlive = true;
+    private volatile Thread reader;
+    private volatile IntSource source;
+    // The source as it was set, kept open after it runs out so reset can rewind it
+    private IntSource openSource;
+    // The values of an input stream before anything was taken, for reset
+    private int[] initialValues;
+    private int[] batch;
+    private volatile long sourceValuesRead;
+    private IntSink sink;
+    private int window;
+    private PortWaits portWaits = PortWaits.NONE;
 
     /**
-     * The constructor initializes the attributes such as row and col of the stream,
-     * isInput, values, currentIndex, streamGraphic, queue, isRunning, isAlive, and
-     * thread. The SynchronousQueue<Integer> object (queue) is used to facilitate
-     * communication between the stream and the silo. The thread is started at
-     * the end of the constructor.
+     * The constructor initializes the attributes such as row and col of the
+     * stream and isInput. The stream starts out empty and not running.
      */
     public Stream(int row, int col, boolean isInput) {
         this.row = row;
         this.col = col;
         this.isInput = isInput;
-        this.values = new ArrayList<>();
-        this.currentIndex = 0;
-        streamGraphic = new StreamGraphic(this);
-        queue = new SynchronousQueue<>();
         isRunning = false;
-        thread = new Thread(this);
-        thread.start();
-    }
-
-    /**
-     * The run method is the entry point for the thread. It is
-     * an infinite loop that continues while the isAlive attribute
-     * is true. If the stream is an input stream and is running, it
-     * outputs the values in the values list to its SynchronousQueue.
-     * Otherwise, the thread sleeps for 1000 milliseconds.
-     */
-    @Override
-    public void run() {
-        //While the input stream has values, output them to its SynchronousQueue
-        while (isAlive) {
-            if (isInput && isRunning) {
-                if (currentIndex < values.size()) {
-                    try {
-                        queue.put(values.get(currentIndex));
-                        currentIndex++;
-                        //update stream graphic
-                        Platform.runLater(streamGraphic::updateGraphic);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-            } else {
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
     }
 
     /**
-     * The start and stop methods control the execution of the stream by
-     * setting the isRunning attribute.
+     * The start method lets the silo next to an input stream take values
+     * from it.
      */
-
     public void start() {
+        rememberInitialValues();
         isRunning = true;
+        wakeReader();
     }
 
     public boolean isInput() {
@@ -97,34 +77,321 @@ public class Stream implements Runnable {
     }
 
     /**
-     * The addValue method adds a value to the values list and updates
-     * the graphical representation of the stream.
+     * The addValue method adds a value to the end of the stream and
+     * notifies the listener of the stream. It is used while loading input
+     * streams and by the silo writing to an output stream. With a sink the
+     * value goes to the sink, and with a window the oldest value is dropped
+     * once the window is full.
      */
     public void addValue(int value) {
+        if (sink != null) {
+            writeToSink(value);
+        }
+        if (window > 0) {
+            if (values.size() == window) {
+                values.remove();
+            }
+        } else if (sink != null) {
+            return;
+        }
         values.add(value);
-        Platform.runLater(streamGraphic::updateGraphic);
+        wakeReader();
+        listener.streamChanged();
+    }
+
+    private synchronized void writeToSink(int value) {
+        if (sink == null) {
+            return;
+        }
+        try {
+            sink.write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
-     * The kill method sets the isAlive attribute to false, effectively stopping the thread.
+     * Sends the values of an output stream to a sink. Unless a window is
+     * set as well, the values are then not kept in memory at all.
      */
-    public void kill() {
-        isAlive = false;
+    public synchronized void setSink(IntSink sink) {
+        this.sink = sink;
+    }
+
+    public IntSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Keeps only the given number of most recent values of an output
+     * stream, 0 keeps all of them. Must be set before values are added.
+     */
+    public void setWindow(int window) {
+        if (window < 0) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+        this.window = window;
+    }
+
+    /**
+     * Writes out the values the sink of the stream has collected so far.
+     */
+    public synchronized void flush() throws IOException {
+        if (sink != null) {
+            sink.flush();
+        }
+    }
+
+    /**
+     * Backs an input stream with a source that is read once the values
+     * added with addValue have been taken.
+     */
+    public void setSource(IntSource source) {
+        rememberInitialValues();
+        this.source = source;
+        openSource = source;
+    }
+
+    public IntSource getSource() {
+        return source;
+    }
+
+    /**
+     * The take method removes the next value of an input stream, waiting
+     * until the stream has been started and has a value to hand out. It is
+     * called by the silo reading from the stream.
+     * @throws InterruptedException if the thread is interrupted or the
+     * stream is killed while waiting
+     */
+    public int take() throws InterruptedException {
+        if (values.isEmpty()) {
+            refill();
+        }
+        if (!isRunning || values.isEmpty()) {
+            awaitValue();
+        }
+        int value = values.remove();
+        listener.streamChanged();
+        return value;
+    }
+
+    /**
+     * Pulls the next batch of values from the source into the buffer. When
+     * the source is exhausted it is dropped, but only closed by close.
+     */
+    private void refill() {
+        IntSource current = source;
+        if (current == null) {
+            return;
+        }
+        if (batch == null) {
+            batch = new int[BATCH_SIZE];
+        }
+        try {
+            int count = current.read(batch, 0, batch.length);
+            if (count < 0) {
+                source = null;
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                values.add(batch[i]);
+            }
+            sourceValuesRead += count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns whether a silo calling take would get a value without
+     * waiting, either from the buffer or from the source.
+     */
+    public boolean canTake() {
+        return isRunning && (!values.isEmpty() || source != null);
+    }
+
+    /**
+     * Returns whether an input stream that has been started has nothing
+     * left to hand out, neither buffered nor in its source.
+     */
+    boolean isDrained() {
+        return isRunning && values.isEmpty() && source == null;
+    }
+
+    /**
+     * Returns how many values have been pulled from the source so far.
+     */
+    public long getSourceValuesRead() {
+        return sourceValuesRead;
     }
 
     /**
-     * The getStreamGraphic, getValues, getRow, getCol, and getQueue methods are
-     * getter methods for their corresponding attributes.
+     * The restore method puts the stream back into the state saved in a
+     * Checkpoint: the buffered values get positions from first on, and the
+     * first sourceValuesRead values of the source are skipped. For an input
+     * stream first is the number of values already taken. It has to be
+     * called before the stream is started.
      */
+    public void restore(long first, int[] buffered, long sourceValuesRead) throws IOException {
+        rememberInitialValues();
+        values.reset(first);
+        for (int value : buffered) {
+            values.add(value);
+        }
+        IntSource current = source;
+        if (current != null && current.skip(sourceValuesRead) < sourceValuesRead) {
+            throw new IllegalArgumentException("Input stream at " + row + "," + col
+                    + " has fewer values than the checkpoint has read");
+        }
+        this.sourceValuesRead = sourceValuesRead;
+    }
+
+    /**
+     * The reset method puts the stream back to the state it was loaded in:
+     * an input stream hands out its values from the first one again and
+     * rewinds its source, an output stream is emptied and its sink starts
+     * over. The stream has to be started again. Like restore, it may only
+     * be called while no silo uses the stream.
+     */
+    public void reset() throws IOException {
+        isRunning = false;
+        if (isInput) {
+            if (initialValues != null) {
+                values.reset(0);
+                for (int value : initialValues) {
+                    values.add(value);
+                }
+            }
+            if (openSource != null) {
+                openSource.rewind();
+                source = openSource;
+            }
+            sourceValuesRead = 0;
+        } else {
+            values.reset(0);
+            synchronized (this) {
+                if (sink != null) {
+                    sink.truncate();
+                }
+            }
+        }
+        listener.streamChanged();
+    }
+
+    /**
+     * Keeps a copy of the values an input stream was loaded with, the
+     * first time it is started, restored or given a source.
+     */
+    private void rememberInitialValues() {
+        if (isInput && initialValues == null) {
+            initialValues = values.toArray();
+        }
+    }
+
+    /**
+     * Parks the reading thread until the stream is running and not empty.
+     * addValue, start and kill unpark it. The wait is counted by the
+     * PortWaits of the network the stream belongs to.
+     */
+    private void awaitValue() throws InterruptedException {
+        reader = Thread.currentThread();
+        portWaits.started();
+        try {
+            // Check again after publishing the reader, so no wake up is lost
+            while (!isRunning || values.isEmpty()) {
+                if (!isAlive || Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.park(this);
+            }
+        } finally {
+            reader = null;
+            portWaits.ended();
+        }
+    }
+
+    void setPortWaits(PortWaits portWaits) {
+        this.portWaits = portWaits;
+    }
+
+    private void wakeReader() {
+        Thread thread = reader;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
 
-    public StreamGraphic getStreamGraphic() {
-        return streamGraphic;
+    /**
+     * The size and getValue methods give other threads, such as the GUI,
+     * a view of the values while the stream is being used. Values are
+     * numbered from the first value ever added and size counts all of them.
+     * Only values from getCurrentIndex on, and for a windowed output stream
+     * only the last window values, can still be read.
+     */
+    public int size() {
+        return (int) values.getTail();
+    }
+
+    public int getValue(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * Returns the index of the next value an input stream will hand out.
+     */
+    public int getCurrentIndex() {
+        return (int) values.getHead();
+    }
+
+    /**
+     * Returns the values that have not been taken from the stream yet. For
+     * an output stream these are all the values written to it.
+     */
+    public int[] toArray() {
+        return values.toArray();
+    }
+
+    /**
+     * Sets the StreamListener that is notified when the stream changes.
+     * Passing null restores the no-op listener.
+     */
+    public void setListener(StreamListener listener) {
+        this.listener = listener == null ? StreamListener.NONE : listener;
     }
 
-    public List<Integer> getValues() {
-        return values;
+    /**
+     * The kill method sets the isAlive attribute to false, releasing a silo
+     * that is waiting for a value.
+     */
+    public void kill() {
+        isAlive = false;
+        wakeReader();
+    }
+
+    /**
+     * Closes the source and the sink of the stream, if it has them. The
+     * sink writes out its remaining values first.
+     */
+    public void close() throws IOException {
+        IntSource current = openSource;
+        source = null;
+        openSource = null;
+        if (current != null) {
+            current.close();
+        }
+        synchronized (this) {
+            if (sink != null) {
+                sink.close();
+                sink = null;
+            }
+        }
     }
 
+    /**
+     * The getRow and getCol methods are getter methods for their
+     * corresponding attributes.
+     */
+
     public int getRow() {
         return row;
     }
@@ -133,14 +400,10 @@ public class Stream implements Runnable {
         return col;
     }
 
-    public SynchronousQueue<Integer> getQueue() {
-        Platform.runLater(streamGraphic::updateGraphic);
-        return queue;
-    }
-
     public String getCurrentValue() {
-        if (currentIndex < values.size()) {
-            return String.valueOf(values.get(currentIndex));
+        long index = values.getHead();
+        if (index < values.getTail()) {
+            return String.valueOf(values.get(index));
         } else {
             return "";
         }
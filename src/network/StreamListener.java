@@ -0,0 +1,18 @@
+package network;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The StreamListener interface is notified whenever a Stream's values or
+ * current position change. The GUI subscribes with its StreamGraphic and
+ * headless runs keep the no-op NONE listener.
+ */
+public interface StreamListener {
+    /**
+     * A listener that ignores every event.
+     */
+    StreamListener NONE = () -> {
+    };
+
+    void streamChanged();
+}
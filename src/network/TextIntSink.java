@@ -0,0 +1,77 @@
+package network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The TextIntSink writes one decimal value per line, the format
+ * TextIntSource reads. Digits are written straight into a byte buffer, so
+ * no String is created per value, and the buffer goes to the FileChannel
+ * in a single write once it is full.
+ */
+public final class TextIntSink implements IntSink {
+    private static final int BUFFER_BYTES = 64 << 10;
+    // "-2147483648\n" is the longest line
+    private static final int MAX_LINE = 12;
+
+    private final FileChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_BYTES);
+    private final byte[] digits = new byte[10];
+
+    public TextIntSink(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        if (bytes.remaining() < MAX_LINE) {
+            flush();
+        }
+        // Work with the negative value, which also covers Integer.MIN_VALUE
+        int rest = value;
+        if (value < 0) {
+            bytes.put((byte) '-');
+        } else {
+            rest = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        while (count > 0) {
+            bytes.put(digits[--count]);
+        }
+        bytes.put((byte) '\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    @Override
+    public void truncate() throws IOException {
+        bytes.clear();
+        channel.truncate(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
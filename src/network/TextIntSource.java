@@ -0,0 +1,103 @@
+package network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The TextIntSource reads decimal integers separated by whitespace from a
+ * file. The file is read through a FileChannel into a fixed size buffer
+ * and the digits are parsed straight from the bytes, so no String is
+ * created per value. A number may be split across two buffer loads.
+ */
+public final class TextIntSource implements IntSource {
+    private static final int BUFFER_BYTES = 64 << 10;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_BYTES);
+    private boolean endOfFile;
+
+    // Number being parsed when the previous buffer load ran out
+    private long number;
+    private boolean inNumber;
+    private boolean negative;
+
+    public TextIntSource(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        bytes.flip();
+    }
+
+    @Override
+    public int read(int[] buffer, int offset, int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            if (!bytes.hasRemaining()) {
+                if (endOfFile) {
+                    break;
+                }
+                bytes.clear();
+                endOfFile = channel.read(bytes) < 0;
+                bytes.flip();
+                if (endOfFile) {
+                    // The last number may not be followed by whitespace
+                    if (inNumber) {
+                        buffer[offset + count++] = finishNumber();
+                    }
+                    break;
+                }
+            }
+            byte b = bytes.get();
+            if (b >= '0' && b <= '9') {
+                number = number * 10 + (b - '0');
+                if (number > (long) Integer.MAX_VALUE + 1) {
+                    throw new NumberFormatException("Value out of range in " + path);
+                }
+                inNumber = true;
+            } else if (b == '-' && !inNumber && !negative) {
+                negative = true;
+            } else if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                if (inNumber) {
+                    buffer[offset + count++] = finishNumber();
+                } else if (negative) {
+                    throw new NumberFormatException("Missing digits after '-' in " + path);
+                }
+            } else {
+                throw new NumberFormatException("Unexpected character '" + (char) b + "' in " + path);
+            }
+        }
+        return count == 0 && endOfFile ? -1 : count;
+    }
+
+    private int finishNumber() {
+        long value = negative ? -number : number;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Value out of range in " + path);
+        }
+        number = 0;
+        inNumber = false;
+        negative = false;
+        return (int) value;
+    }
+
+    @Override
+    public void rewind() throws IOException {
+        channel.position(0);
+        bytes.clear();
+        bytes.flip();
+        endOfFile = false;
+        number = 0;
+        inNumber = false;
+        negative = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,503 @@
+package network;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Phaser;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The TiledEngine runs the same cycles as the LockstepEngine on several
+ * cores. The grid is cut into rectangular tiles and every worker thread
+ * steps the silos of a contiguous run of tiles in a tight loop, then waits
+ * for the others at a barrier once per cycle. Like the LockstepEngine it
+ * leaves out idle silos, so a tile costs as much as its active silos.
+ *
+ * Transfers between two silos of the same tile use the pending value cells
+ * of the LockstepEngine directly. Across a tile boundary a silo never
+ * touches the cells of the other tile during a cycle: posting a value or
+ * taking one is put into an exchange buffer addressed to the neighbouring
+ * tile, and that tile applies it before it steps the next cycle. Since a
+ * value posted or taken in a cycle only becomes visible in a later cycle
+ * anyway, the results are the same as those of the LockstepEngine, for any
+ * tile size and number of workers. Every exchange buffer exists twice and
+ * the cycles alternate between them, so a tile can fill one while its
+ * neighbour drains the other.
+ *
+ * The silos are kept in SiloArrays and every worker steps them with a
+ * SiloStepper, like the LockstepEngine does, which only sends what crosses
+ * a tile boundary to the exchanges instead.
+ *
+ * Tracing is not supported, record traces with the LockstepEngine.
+ */
+public class TiledEngine {
+    // Kinds of entries in an exchange buffer
+    private static final int POST = 0;
+    private static final int TAKE = 1;
+
+    // Largest side of an automatically sized tile, about 400 KB of silo state
+    private static final int MAX_AUTO_TILE = 64;
+
+    // Cells are owned by the tile of the receiving silo
+    private final SiloArrays silos;
+    private final int numCols;
+    // Whether the value a silo posted across a tile boundary has been taken
+    private final boolean[] taken;
+
+    private final int tileRows;
+    private final int tileCols;
+    private final int numTileRows;
+    private final int numTileCols;
+    private final int[] tileOf;
+    // The silos of every tile that are stepped, leaving out the idle ones
+    private final int[][] tileSilos;
+    // Two buffers per tile and direction, indexed by (tile * 2 + parity) * Port.COUNT + port
+    private final Exchange[] exchanges;
+    private final int parallelism;
+
+    private long cycle;
+    private volatile RuntimeException failure;
+    // Whether no silo could do anything in the last cycle, set at the barrier
+    private boolean stuck;
+    private Deadlock deadlock;
+
+    /**
+     * Creates an engine that picks the tile size and uses one worker per
+     * core. Programs are given row by row, as in Parser.InputFileData.
+     * @throws IllegalArgumentException if a program does not compile
+     */
+    public TiledEngine(int numRows, int numCols, List<String> siloPrograms) {
+        this(numRows, numCols, siloPrograms, 0, 0, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an engine with tiles of tileRows x tileCols silos, stepped by
+     * at most parallelism worker threads. A tile size of 0 picks square
+     * tiles so that every worker has at least one tile, but no larger than
+     * 64 x 64 silos.
+     * @throws IllegalArgumentException if a program does not compile or a
+     * size is negative
+     */
+    public TiledEngine(int numRows, int numCols, List<String> siloPrograms, int tileRows, int tileCols,
+                       int parallelism) {
+        if (tileRows < 0 || tileCols < 0 || parallelism < 1) {
+            throw new IllegalArgumentException("Invalid tiles: " + tileRows + " x " + tileCols + " on "
+                    + parallelism + " workers");
+        }
+        silos = new SiloArrays(numRows, numCols, siloPrograms);
+        this.numCols = numCols;
+        int numSilos = silos.numSilos;
+
+        if (tileRows == 0 || tileCols == 0) {
+            int side = (int) Math.ceil(Math.sqrt((double) numSilos / parallelism));
+            side = Math.max(1, Math.min(MAX_AUTO_TILE, side));
+            tileRows = tileRows == 0 ? Math.min(side, numRows) : tileRows;
+            tileCols = tileCols == 0 ? Math.min(side, numCols) : tileCols;
+        }
+        this.tileRows = Math.min(tileRows, numRows);
+        this.tileCols = Math.min(tileCols, numCols);
+        numTileRows = (numRows + this.tileRows - 1) / this.tileRows;
+        numTileCols = (numCols + this.tileCols - 1) / this.tileCols;
+        this.parallelism = Math.min(parallelism, numTileRows * numTileCols);
+        tileOf = new int[numSilos];
+        for (int s = 0; s < numSilos; s++) {
+            tileOf[s] = (s / numCols / this.tileRows) * numTileCols + (s % numCols) / this.tileCols;
+        }
+        int[] active = silos.active;
+        int[] tileSizes = new int[numTileRows * numTileCols];
+        for (int s : active) {
+            tileSizes[tileOf[s]]++;
+        }
+        tileSilos = new int[tileSizes.length][];
+        for (int tile = 0; tile < tileSilos.length; tile++) {
+            tileSilos[tile] = new int[tileSizes[tile]];
+            tileSizes[tile] = 0;
+        }
+        for (int s : active) {
+            tileSilos[tileOf[s]][tileSizes[tileOf[s]]++] = s;
+        }
+        exchanges = new Exchange[numTileRows * numTileCols * 2 * Port.COUNT];
+        for (int i = 0; i < exchanges.length; i++) {
+            exchanges[i] = new Exchange();
+        }
+        taken = new boolean[numSilos];
+    }
+
+    /**
+     * Creates an engine for a parsed input file with automatic tiles and
+     * one worker per core, with the file's streams attached.
+     * @throws IllegalArgumentException if a stream or program is misplaced
+     */
+    public TiledEngine(Parser.InputFileData fileData) {
+        this(fileData.getNumRows(), fileData.getNumCols(), fileData.getSiloInstructions());
+        silos.attach(fileData);
+    }
+
+    /**
+     * Attaches an input stream at the given position outside the grid.
+     * Streams must be attached before the first cycle.
+     * @throws IllegalArgumentException if the stream is not next to the grid
+     */
+    public void addInputStream(int row, int col, int[] values) {
+        silos.addInputStream(row, col, values);
+    }
+
+    /**
+     * Attaches an input stream whose values are pulled from a source, a
+     * batch at a time, as the silo next to it reads them.
+     * @throws IllegalArgumentException if the stream is not next to the grid
+     */
+    public void addInputStream(int row, int col, IntSource source) {
+        silos.addInputStream(row, col, new int[0]);
+        silos.inputSources.set(silos.inputSources.size() - 1, source);
+    }
+
+    /**
+     * Attaches an output stream at the given position outside the grid.
+     * @throws IllegalArgumentException if the stream is not next to the grid
+     */
+    public void addOutputStream(int row, int col) {
+        silos.addOutputStream(row, col);
+    }
+
+    /**
+     * Attaches an output stream that writes its values to a sink instead
+     * of keeping them, so getOutputValues returns nothing for it.
+     * @throws IllegalArgumentException if the stream is not next to the grid
+     */
+    public void addOutputStream(int row, int col, IntSink sink) {
+        silos.addOutputStream(row, col);
+        silos.outputSinks.set(silos.outputSinks.size() - 1, sink);
+    }
+
+    /**
+     * The step method executes one cycle on every silo, on the calling
+     * thread.
+     */
+    public void step() {
+        runCycles(1);
+    }
+
+    /**
+     * The run method executes the given number of cycles on the worker
+     * threads and then flushes the output sinks. The calling thread is one
+     * of the workers and the others are started for this call only, so
+     * cycles are best run in large batches. The workers stop early at the
+     * end of a cycle in which no silo could do anything, see getDeadlock.
+     * @throws UncheckedIOException if a stream fails, after the workers
+     * have stopped at the end of the cycle it failed in
+     */
+    public void run(long cycles) {
+        if (deadlock == null) {
+            runCycles(cycles);
+        }
+        flush();
+    }
+
+    private void runCycles(long cycles) {
+        int numTiles = numTileRows * numTileCols;
+        long start = cycle;
+        Worker main;
+        if (parallelism == 1 || cycles == 1) {
+            main = new Worker(silos, 0, numTiles, null);
+            main.runCycles(start, cycles);
+        } else {
+            Worker[] workers = new Worker[parallelism];
+            Phaser barrier = new Phaser(parallelism) {
+                /**
+                 * Runs in the last worker to arrive, which adds up the silos
+                 * every worker found stalled in the cycle.
+                 */
+                @Override
+                protected boolean onAdvance(int phase, int registeredParties) {
+                    int stalls = 0;
+                    for (Worker worker : workers) {
+                        stalls += worker.stalls;
+                    }
+                    stuck = stalls == silos.active.length;
+                    return false;
+                }
+            };
+            Thread[] threads = new Thread[parallelism];
+            main = workers[0] = new Worker(silos, 0, numTiles / parallelism, barrier);
+            for (int w = 1; w < parallelism; w++) {
+                Worker worker = new Worker(silos, numTiles * w / parallelism, numTiles * (w + 1) / parallelism,
+                        barrier);
+                workers[w] = worker;
+                threads[w] = new Thread(() -> worker.runCycles(start, cycles), "tile-worker-" + w);
+                threads[w].setDaemon(true);
+                threads[w].start();
+            }
+            main.runCycles(start, cycles);
+            for (int w = 1; w < parallelism; w++) {
+                joinUninterruptibly(threads[w]);
+            }
+        }
+        cycle = start + main.completed;
+        if (stuck && deadlock == null) {
+            deadlock = silos.findDeadlock(cycle);
+        }
+        RuntimeException error = failure;
+        if (error != null) {
+            failure = null;
+            throw error;
+        }
+    }
+
+    /**
+     * The getDeadlock method returns the Deadlock found at the end of the
+     * first cycle in which no silo could do anything, or null while the
+     * network still makes progress.
+     */
+    public Deadlock getDeadlock() {
+        return deadlock;
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes out the values the output sinks have collected so far.
+     */
+    public void flush() {
+        try {
+            silos.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the input sources and output sinks of the engine, writing out
+     * the values the sinks still hold.
+     */
+    public void close() throws IOException {
+        silos.close();
+    }
+
+    /**
+     * An Exchange holds the posts and takes one tile sends to a neighbour
+     * during a cycle, as triples of kind, cell or silo, and value.
+     */
+    private static final class Exchange {
+        private int[] entries = new int[48];
+        private int size;
+
+        void add(int kind, int index, int value) {
+            if (size + 3 > entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[size] = kind;
+            entries[size + 1] = index;
+            entries[size + 2] = value;
+            size += 3;
+        }
+    }
+
+    /**
+     * A Worker steps the tiles from first up to last. Stepping only ever
+     * writes the state of silos and cells in those tiles and the exchanges
+     * they send, so workers need no locks between two barriers. Each
+     * worker is a SiloStepper of its own, with its own batch for refilling
+     * input streams and its own count of the silos of its tiles that could
+     * not do anything in the current cycle.
+     */
+    private final class Worker extends SiloStepper {
+        private final int first;
+        private final int last;
+        private final Phaser barrier;
+        private long completed;
+
+        Worker(SiloArrays silos, int first, int last, Phaser barrier) {
+            super(silos);
+            this.first = first;
+            this.last = last;
+            this.barrier = barrier;
+        }
+
+        /**
+         * Runs the cycles after the given one. A failure ends the cycle for
+         * this worker, and every worker stops once that cycle is complete,
+         * as they do after a cycle in which every silo stalled.
+         */
+        void runCycles(long start, long cycles) {
+            for (long c = 1; c <= cycles; c++) {
+                long t = start + c;
+                stalls = 0;
+                try {
+                    for (int tile = first; tile < last; tile++) {
+                        receive(tile, t);
+                        stepTile(tile, t);
+                    }
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+                if (barrier != null) {
+                    barrier.arriveAndAwaitAdvance();
+                } else {
+                    stuck = stalls == silos.active.length;
+                }
+                completed = c;
+                if (failure != null || stuck) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Applies what the neighbouring tiles sent during the previous
+         * cycle, as if they had written the cells themselves, and empties
+         * the exchanges for their next use two cycles later.
+         */
+        private void receive(int tile, long t) {
+            int tileRow = tile / numTileCols;
+            int tileCol = tile % numTileCols;
+            int parity = (int) ((t - 1) & 1);
+            for (int dir = 0; dir < Port.COUNT; dir++) {
+                int r = tileRow + Port.rowOffset(dir);
+                int c = tileCol + Port.colOffset(dir);
+                if (r < 0 || r >= numTileRows || c < 0 || c >= numTileCols) {
+                    continue;
+                }
+                Exchange exchange = exchanges[((r * numTileCols + c) * 2 + parity) * Port.COUNT + Port.opposite(dir)];
+                int[] entries = exchange.entries;
+                for (int i = 0; i < exchange.size; i += 3) {
+                    int index = entries[i + 1];
+                    if (entries[i] == POST) {
+                        cellValue[index] = entries[i + 2];
+                        cellFull[index] = true;
+                        postCycle[index] = t - 1;
+                    } else {
+                        taken[index] = true;
+                    }
+                }
+                exchange.size = 0;
+            }
+        }
+
+        private void send(int s, int port, int kind, int index, int value, long t) {
+            exchanges[(tileOf[s] * 2 + (int) (t & 1)) * Port.COUNT + port].add(kind, index, value);
+        }
+
+        private void stepTile(int tile, long t) {
+            for (int s : tileSilos[tile]) {
+                stepSilo(s, t);
+            }
+        }
+
+        /**
+         * A value for a silo in another tile is sent to that tile instead of
+         * being put into its cell.
+         */
+        @Override
+        void post(int s, int port, int cell, int value, long t) {
+            if (tileOf[cell / 4] != tileOf[s]) {
+                send(s, port, POST, cell, value, t);
+            } else {
+                super.post(s, port, cell, value, t);
+            }
+        }
+
+        /**
+         * A value posted to a silo in another tile has been taken once that
+         * tile said so.
+         */
+        @Override
+        boolean isTaken(int s, int cell, long t) {
+            if (tileOf[cell / 4] == tileOf[s]) {
+                return super.isTaken(s, cell, t);
+            }
+            if (taken[s]) {
+                taken[s] = false;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Taking a value posted by a silo in another tile also tells that
+         * silo's tile.
+         */
+        @Override
+        void took(int s, int port, long t) {
+            int writer = s + Port.rowOffset(port) * numCols + Port.colOffset(port);
+            if (tileOf[writer] != tileOf[s]) {
+                send(s, port, TAKE, writer, 0, t);
+            }
+        }
+    }
+
+    /**
+     * The getCycle method returns the number of cycles executed so far.
+     */
+    public long getCycle() {
+        return cycle;
+    }
+
+    /**
+     * The getOutputValues method returns the values written to an output
+     * stream, in the order the streams were added.
+     */
+    public int[] getOutputValues(int index) {
+        return silos.outputStreams.get(index).toArray();
+    }
+
+    /**
+     * Returns how many values have been written to an output stream,
+     * including those that went to its sink.
+     */
+    public long getOutputCount(int index) {
+        return silos.outputCounts[index];
+    }
+
+    public int getNumOutputStreams() {
+        return silos.outputStreams.size();
+    }
+
+    /**
+     * The getTileRows, getTileCols and getParallelism methods return the
+     * tile size in use and the number of workers that step the tiles.
+     */
+    public int getTileRows() {
+        return tileRows;
+    }
+
+    public int getTileCols() {
+        return tileCols;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * The getAcc, getBak and getInstructionIndex methods return the
+     * register values of the silo at the given row and column.
+     */
+    public int getAcc(int row, int col) {
+        return silos.acc[row * numCols + col];
+    }
+
+    public int getBak(int row, int col) {
+        return silos.bak[row * numCols + col];
+    }
+
+    public int getInstructionIndex(int row, int col) {
+        return silos.pc[row * numCols + col];
+    }
+}
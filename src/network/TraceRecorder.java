@@ -0,0 +1,197 @@
+package network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The TraceRecorder writes a cycle by cycle record of a network to a file,
+ * which a TraceReplayer can play back without executing any instruction.
+ *
+ * The file starts with MAGIC, VERSION and the size of the grid and the
+ * number of input and output streams. Every cycle then lists the silos whose
+ * instruction index, ACC, BAK, mode or transfer value changed, followed by
+ * the values taken from input streams and written to output streams. Only
+ * differences are stored: a silo is given as the distance to the previous
+ * changed silo, and each changed register as the difference to its last
+ * recorded value. All numbers are varints, small differences zigzag encoded,
+ * so a cycle in which nothing changes takes two bytes.
+ *
+ * Records are collected in a fixed size buffer that goes to the file each
+ * time it fills up, so a long run never holds more than one buffer in
+ * memory.
+ */
+public final class TraceRecorder implements Closeable {
+    public static final int MAGIC = 0x41535452;
+    public static final int VERSION = 1;
+
+    // The modes of a silo, as recorded in the trace
+    public static final int IDLE = 0;
+    public static final int READ = 1;
+    public static final int WRITE = 2;
+    public static final int HALTED = 3;
+
+    // Bits of the mask that says which fields of a silo changed
+    static final int PC = 1;
+    static final int ACC = 2;
+    static final int BAK = 4;
+    static final int MODE = 8;
+    static final int VALUE = 16;
+
+    private static final int BUFFER_BYTES = 64 << 10;
+    // A varint silo distance, the mask and five varint fields
+    private static final int MAX_SILO_BYTES = 1 + 6 * 5;
+
+    private final FileChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final int[] pc;
+    private final int[] acc;
+    private final int[] bak;
+    private final int[] mode;
+    private final int[] value;
+    private int lastSilo = -1;
+    private int[] events = new int[16];
+    private int numEvents;
+
+    /**
+     * Creates or truncates the trace file and writes its header.
+     */
+    public TraceRecorder(Path path, int numRows, int numCols, int numInputs, int numOutputs) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        int numSilos = numRows * numCols;
+        pc = new int[numSilos];
+        acc = new int[numSilos];
+        bak = new int[numSilos];
+        mode = new int[numSilos];
+        value = new int[numSilos];
+        bytes.putInt(MAGIC);
+        putVarint(VERSION);
+        putVarint(numRows);
+        putVarint(numCols);
+        putVarint(numInputs);
+        putVarint(numOutputs);
+    }
+
+    /**
+     * Records the state of a silo at the end of the current cycle: its
+     * registers, its mode with the Port it is reading or writing, and the
+     * value of its last write. Silos have to be given in increasing order,
+     * and silos that are left out keep their state.
+     */
+    public void silo(int silo, int pc, int acc, int bak, int mode, int port, int value) throws IOException {
+        mode |= port << 2;
+        int mask = (pc != this.pc[silo] ? PC : 0)
+                | (acc != this.acc[silo] ? ACC : 0)
+                | (bak != this.bak[silo] ? BAK : 0)
+                | (mode != this.mode[silo] ? MODE : 0)
+                | (value != this.value[silo] ? VALUE : 0);
+        if (mask == 0) {
+            return;
+        }
+        if (bytes.remaining() < MAX_SILO_BYTES) {
+            flush();
+        }
+        putVarint(silo - lastSilo);
+        bytes.put((byte) mask);
+        if ((mask & PC) != 0) {
+            putVarint(zigzag(pc - this.pc[silo]));
+            this.pc[silo] = pc;
+        }
+        if ((mask & ACC) != 0) {
+            putVarint(zigzag(acc - this.acc[silo]));
+            this.acc[silo] = acc;
+        }
+        if ((mask & BAK) != 0) {
+            putVarint(zigzag(bak - this.bak[silo]));
+            this.bak[silo] = bak;
+        }
+        if ((mask & MODE) != 0) {
+            putVarint(mode);
+            this.mode[silo] = mode;
+        }
+        if ((mask & VALUE) != 0) {
+            putVarint(zigzag(value - this.value[silo]));
+            this.value[silo] = value;
+        }
+        lastSilo = silo;
+    }
+
+    /**
+     * The input and output methods record a value taken from an input
+     * stream or written to an output stream during the current cycle.
+     */
+    public void input(int stream, int value) {
+        addEvent(stream << 1, value);
+    }
+
+    public void output(int stream, int value) {
+        addEvent(stream << 1 | 1, value);
+    }
+
+    private void addEvent(int target, int value) {
+        if (numEvents + 2 > events.length) {
+            events = Arrays.copyOf(events, events.length * 2);
+        }
+        events[numEvents++] = target;
+        events[numEvents++] = value;
+    }
+
+    /**
+     * Ends the record of the current cycle.
+     */
+    public void endCycle() throws IOException {
+        if (bytes.remaining() < 10) {
+            flush();
+        }
+        putVarint(0);
+        putVarint(numEvents / 2);
+        for (int i = 0; i < numEvents; i += 2) {
+            if (bytes.remaining() < 10) {
+                flush();
+            }
+            putVarint(events[i]);
+            putVarint(zigzag(events[i + 1]));
+        }
+        numEvents = 0;
+        lastSilo = -1;
+    }
+
+    /**
+     * Writes out the records collected so far.
+     */
+    public void flush() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private void putVarint(int n) {
+        while ((n & ~0x7F) != 0) {
+            bytes.put((byte) (n & 0x7F | 0x80));
+            n >>>= 7;
+        }
+        bytes.put((byte) n);
+    }
+}
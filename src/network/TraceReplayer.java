@@ -0,0 +1,255 @@
+package network;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The TraceReplayer plays back a file written by a TraceRecorder, one cycle
+ * per call to next. It only applies the recorded differences, so it moves
+ * through a trace much faster than the network ran, and it needs neither
+ * the programs nor the input values. The state of every silo and the
+ * stream values of the last cycle can be read after each step. The file is
+ * read through a fixed size buffer, so traces can be larger than memory.
+ */
+public final class TraceReplayer implements Closeable {
+    private static final int BUFFER_BYTES = 64 << 10;
+    // More than the largest silo record or event
+    private static final int MIN_BYTES = 64;
+
+    private final FileChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private boolean endOfFile;
+
+    private final int numRows;
+    private final int numCols;
+    private final int numInputs;
+    private final int numOutputs;
+    private final int[] pc;
+    private final int[] acc;
+    private final int[] bak;
+    private final int[] mode;
+    private final int[] value;
+    private long cycle;
+    private int[] events = new int[16];
+    private int numEvents;
+
+    /**
+     * Opens a trace file and reads its header.
+     * @throws IOException if the file is not a trace or cannot be read
+     */
+    public TraceReplayer(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        bytes.flip();
+        fill();
+        try {
+            if (bytes.remaining() < Integer.BYTES || bytes.getInt() != TraceRecorder.MAGIC) {
+                throw new IOException(path + " is not a trace file");
+            }
+            int version = getVarint();
+            if (version != TraceRecorder.VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+            numRows = getVarint();
+            numCols = getVarint();
+            numInputs = getVarint();
+            numOutputs = getVarint();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        int numSilos = numRows * numCols;
+        pc = new int[numSilos];
+        acc = new int[numSilos];
+        bak = new int[numSilos];
+        mode = new int[numSilos];
+        value = new int[numSilos];
+    }
+
+    /**
+     * The next method applies the record of the next cycle.
+     * @return false if the trace has no more cycles
+     * @throws IOException if the trace cannot be read or is cut off
+     */
+    public boolean next() throws IOException {
+        fill();
+        if (!bytes.hasRemaining()) {
+            return false;
+        }
+        int silo = -1;
+        while (true) {
+            fill();
+            int distance = getVarint();
+            if (distance == 0) {
+                break;
+            }
+            silo += distance;
+            int mask = bytes.get();
+            if ((mask & TraceRecorder.PC) != 0) {
+                pc[silo] += unzigzag(getVarint());
+            }
+            if ((mask & TraceRecorder.ACC) != 0) {
+                acc[silo] += unzigzag(getVarint());
+            }
+            if ((mask & TraceRecorder.BAK) != 0) {
+                bak[silo] += unzigzag(getVarint());
+            }
+            if ((mask & TraceRecorder.MODE) != 0) {
+                mode[silo] = getVarint();
+            }
+            if ((mask & TraceRecorder.VALUE) != 0) {
+                value[silo] += unzigzag(getVarint());
+            }
+        }
+        fill();
+        numEvents = getVarint() * 2;
+        if (numEvents > events.length) {
+            events = Arrays.copyOf(events, Math.max(numEvents, events.length * 2));
+        }
+        for (int i = 0; i < numEvents; i += 2) {
+            fill();
+            events[i] = getVarint();
+            events[i + 1] = unzigzag(getVarint());
+        }
+        cycle++;
+        return true;
+    }
+
+    /**
+     * Applies the records of up to the given number of cycles.
+     * @return the number of cycles that were applied
+     */
+    public long skip(long cycles) throws IOException {
+        long applied = 0;
+        while (applied < cycles && next()) {
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Makes sure at least MIN_BYTES are buffered, unless the file ends
+     * first.
+     */
+    private void fill() throws IOException {
+        if (bytes.remaining() >= MIN_BYTES || endOfFile) {
+            return;
+        }
+        bytes.compact();
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes) < 0) {
+                endOfFile = true;
+                break;
+            }
+        }
+        bytes.flip();
+    }
+
+    private int getVarint() throws IOException {
+        int n = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!bytes.hasRemaining()) {
+                throw new EOFException("Trace ends in the middle of cycle " + (cycle + 1));
+            }
+            int b = bytes.get();
+            n |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return n;
+            }
+        }
+        throw new IOException("Invalid number in cycle " + (cycle + 1));
+    }
+
+    private static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * Returns the number of cycles replayed so far.
+     */
+    public long getCycle() {
+        return cycle;
+    }
+
+    /**
+     * The getAcc, getBak, getInstructionIndex, getMode and getTransferValue
+     * methods return the state of the silo at the given row and column
+     * after the last replayed cycle. The mode is one of the TraceRecorder
+     * modes, and the transfer value is the value of the last write.
+     */
+    public int getAcc(int row, int col) {
+        return acc[row * numCols + col];
+    }
+
+    public int getBak(int row, int col) {
+        return bak[row * numCols + col];
+    }
+
+    public int getInstructionIndex(int row, int col) {
+        return pc[row * numCols + col];
+    }
+
+    public int getMode(int row, int col) {
+        return mode[row * numCols + col] & 3;
+    }
+
+    /**
+     * Returns the port a reading or writing silo is waiting on.
+     */
+    public int getPort(int row, int col) {
+        return mode[row * numCols + col] >> 2;
+    }
+
+    public int getTransferValue(int row, int col) {
+        return value[row * numCols + col];
+    }
+
+    /**
+     * The getEventCount, isOutput, getStream and getValue methods describe
+     * the values taken from input streams and written to output streams
+     * during the last replayed cycle, in the order they happened.
+     */
+    public int getEventCount() {
+        return numEvents / 2;
+    }
+
+    public boolean isOutput(int event) {
+        return (events[event * 2] & 1) != 0;
+    }
+
+    public int getStream(int event) {
+        return events[event * 2] >>> 1;
+    }
+
+    public int getValue(int event) {
+        return events[event * 2 + 1];
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getNumInputs() {
+        return numInputs;
+    }
+
+    public int getNumOutputs() {
+        return numOutputs;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
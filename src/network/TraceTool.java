@@ -0,0 +1,78 @@
+package network;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * The TraceTool records and checks traces without the GUI:
+ *
+ *   java -cp assembly-silos.jar network.TraceTool record [input].txt [trace] [cycles]
+ *   java -cp assembly-silos.jar network.TraceTool replay [trace]
+ *
+ * record runs an input file in the LockstepEngine for the given number of
+ * cycles, or until it finds a Deadlock, and writes its trace. replay plays
+ * a trace back to the end and prints the final state of every silo and the
+ * values written to each output stream, which can be compared between runs.
+ */
+public final class TraceTool {
+    private TraceTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 4 && args[0].equals("record")) {
+            record(args[1], Paths.get(args[2]), Long.parseLong(args[3]));
+        } else if (args.length == 2 && args[0].equals("replay")) {
+            replay(Paths.get(args[1]));
+        } else {
+            System.out.println("Usage: TraceTool record [input file] [trace] [cycles]");
+            System.out.println("       TraceTool replay [trace]");
+            System.exit(1);
+        }
+    }
+
+    private static void record(String inputFile, Path tracePath, long cycles) throws IOException {
+        LockstepEngine engine = new LockstepEngine(new Parser().parseInputFile(inputFile));
+        engine.startTrace(tracePath);
+        long start = System.nanoTime();
+        engine.run(cycles);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        engine.close();
+        System.out.printf("Recorded %d cycles in %.3f s%n", engine.getCycle(), seconds);
+        Deadlock deadlock = engine.getDeadlock();
+        if (deadlock != null) {
+            System.out.printf("Stopped in cycle %d, %s: %s%n", deadlock.getCycle(),
+                    deadlock.isQuiescent() ? "the input is used up" : "deadlocked", deadlock);
+        }
+    }
+
+    private static void replay(Path tracePath) throws IOException {
+        try (TraceReplayer replayer = new TraceReplayer(tracePath)) {
+            long[] outputCounts = new long[replayer.getNumOutputs()];
+            long[] outputSums = new long[replayer.getNumOutputs()];
+            long start = System.nanoTime();
+            while (replayer.next()) {
+                for (int i = 0; i < replayer.getEventCount(); i++) {
+                    if (replayer.isOutput(i)) {
+                        outputCounts[replayer.getStream(i)]++;
+                        outputSums[replayer.getStream(i)] += replayer.getValue(i);
+                    }
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Replayed %d cycles in %.3f s%n", replayer.getCycle(), seconds);
+            for (int row = 0; row < replayer.getNumRows(); row++) {
+                for (int col = 0; col < replayer.getNumCols(); col++) {
+                    System.out.printf("Silo %d,%d: ACC %d BAK %d instruction %d%n", row, col,
+                            replayer.getAcc(row, col), replayer.getBak(row, col),
+                            replayer.getInstructionIndex(row, col));
+                }
+            }
+            for (int k = 0; k < outputCounts.length; k++) {
+                System.out.printf("OUT.%c: %d values, sum %d%n", (char) ('A' + k), outputCounts[k], outputSums[k]);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package network;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Luke McDougall, Jack Vanlyssel, Spoorthi Menta
+ *
+ * A WeakValueMap creates a value for a key once and hands the same value
+ * out for as long as anything else still refers to it. Values are only
+ * held weakly, so once the last user of a value drops it, the garbage
+ * collector takes it and its entry is removed the next time the map is
+ * used. The next request for that key creates a new value.
+ *
+ * Looking up a value that is alive takes no lock. Creating one is
+ * serialized, so two threads asking for the same key get the same value.
+ */
+final class WeakValueMap<K, V> {
+    private final Map<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<V> collected = new ReferenceQueue<>();
+
+    /**
+     * Returns the value of the key, creating it with the given function if
+     * there is none or it has been collected. Exceptions thrown by the
+     * function are passed on and nothing is added.
+     */
+    V get(K key, Function<? super K, ? extends V> create) {
+        Entry<K, V> entry = entries.get(key);
+        V value = entry != null ? entry.get() : null;
+        return value != null ? value : create(key, create);
+    }
+
+    private synchronized V create(K key, Function<? super K, ? extends V> create) {
+        removeCollected();
+        Entry<K, V> entry = entries.get(key);
+        V value = entry != null ? entry.get() : null;
+        if (value == null) {
+            value = create.apply(key);
+            entries.put(key, new Entry<>(key, value, collected));
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of values that have not been collected yet.
+     */
+    int size() {
+        removeCollected();
+        return entries.size();
+    }
+
+    private void removeCollected() {
+        for (Reference<? extends V> reference = collected.poll(); reference != null;
+                reference = collected.poll()) {
+            Entry<?, ?> entry = (Entry<?, ?>) reference;
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * A weak reference to a value that remembers its key, so the entry can
+     * be removed once the value is collected.
+     */
+    private static final class Entry<K, V> extends WeakReference<V> {
+        private final K key;
+
+        Entry(K key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}